@@ -0,0 +1,97 @@
+/**
+ * Tour stored as an array of cities plus the position of every city.
+ * Reversing a path costs time proportional to the shorter of the path and the rest of the cycle.
+ */
+class ArrayTour implements Tour {
+
+    private final int[] cities;
+    private final int[] position;
+    private boolean flipped;
+
+    /**
+     * Creates a tour.
+     *
+     * @param order The cities in visiting order. The array is copied.
+     */
+    ArrayTour(int[] order) {
+        cities = order.clone();
+        position = new int[cities.length];
+        for (int i = 0; i < cities.length; i++) {
+            position[cities[i]] = i;
+        }
+    }
+
+    @Override
+    public int size() {
+        return cities.length;
+    }
+
+    @Override
+    public int next(int city) {
+        return flipped ? before(city) : after(city);
+    }
+
+    @Override
+    public int prev(int city) {
+        return flipped ? after(city) : before(city);
+    }
+
+    private int after(int city) {
+        int i = position[city] + 1;
+        return cities[i == cities.length ? 0 : i];
+    }
+
+    private int before(int city) {
+        int i = position[city];
+        return cities[i == 0 ? cities.length - 1 : i - 1];
+    }
+
+    @Override
+    public boolean between(int from, int city, int to) {
+        if (flipped) {
+            int temp = from;
+            from = to;
+            to = temp;
+        }
+        int a = position[from];
+        int b = position[city];
+        int c = position[to];
+        return a <= c ? a <= b && b <= c : b >= a || b <= c;
+    }
+
+    @Override
+    public void reverse(int from, int to) {
+        int start = position[flipped ? to : from];
+        int end = position[flipped ? from : to];
+        int n = cities.length;
+        int length = Math.floorMod(end - start, n) + 1;
+        if (2 * length > n) {
+            int complementStart = end + 1 == n ? 0 : end + 1;
+            end = start == 0 ? n - 1 : start - 1;
+            start = complementStart;
+            length = n - length;
+            flipped = !flipped;
+        }
+        for (int swaps = length / 2; swaps > 0; swaps--) {
+            int first = cities[start];
+            int second = cities[end];
+            cities[start] = second;
+            position[second] = start;
+            cities[end] = first;
+            position[first] = end;
+            start = start + 1 == n ? 0 : start + 1;
+            end = end == 0 ? n - 1 : end - 1;
+        }
+    }
+
+    @Override
+    public int[] toArray() {
+        int[] order = new int[cities.length];
+        int city = 0;
+        for (int i = 0; i < order.length; i++) {
+            order[i] = city;
+            city = next(city);
+        }
+        return order;
+    }
+}
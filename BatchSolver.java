@@ -0,0 +1,76 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Thread-safe exact solver for many small instances.
+ *
+ * Each instance is solved single threaded by its own {@link dynaTSP}, so instances run side by
+ * side on a thread pool instead of one instance being split across threads. Tables come from a
+ * {@link TablePool} and are reused between instances with the same number of cities.
+ */
+public class BatchSolver implements AutoCloseable {
+
+    private final ExecutorService executor;
+    private final TablePool tables;
+
+    /**
+     * Creates a batch solver.
+     *
+     * @param threads The number of instances solved at the same time.
+     */
+    public BatchSolver(int threads) {
+        executor = Executors.newFixedThreadPool(threads);
+        tables = new TablePool(threads);
+    }
+
+    /**
+     * Solves one instance on the calling thread. Safe to call from several threads at once.
+     *
+     * @param distances The distance between every pair of cities, with dynaTSP.BIG_NUMBER on the diagonal.
+     * @return The optimal tour, or null if there is no tour.
+     */
+    public TourResult solve(double[][] distances) {
+        int cityCount = distances.length;
+        TspTable table = tables.borrow(cityCount);
+        try {
+            return new dynaTSP(distances, table).solve(1);
+        } finally {
+            tables.release(cityCount, table);
+        }
+    }
+
+    /**
+     * Solves every instance on the thread pool and waits for all of them.
+     *
+     * @param instances The distance matrices of the instances.
+     * @return The optimal tours, in the same order as the instances.
+     * @throws InterruptedException If the calling thread is interrupted while waiting.
+     */
+    public List<TourResult> solveAll(List<double[][]> instances) throws InterruptedException {
+        List<Future<TourResult>> futures = new ArrayList<>(instances.size());
+        for (double[][] distances : instances) {
+            futures.add(executor.submit(() -> solve(distances)));
+        }
+        List<TourResult> results = new ArrayList<>(instances.size());
+        for (Future<TourResult> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Solving an instance failed", e.getCause());
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Stops the thread pool once the submitted instances are solved.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
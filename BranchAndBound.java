@@ -0,0 +1,619 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.DoubleAccumulator;
+
+/**
+ * Exact solver for instances too large for the Held-Karp table, by depth-first branch and bound on
+ * Held-Karp 1-tree lower bounds.
+ *
+ * A 1-tree is a spanning tree of cities 1 to n-1 plus two edges from city 0. Every tour is a
+ * 1-tree, so the shortest 1-tree is a lower bound on the tour length. Each city gets a penalty
+ * that is added to the length of all its edges and subtracted twice from the bound; this leaves
+ * the length of every tour unchanged but can raise the bound. The penalties are found by
+ * subgradient ascent, raising them for cities with more than two tree edges and lowering them for
+ * leaves (Held and Karp, 1971). A 1-tree in which every city has two edges is a tour.
+ *
+ * Subproblems fix edges into or out of the tour. One whose 1-tree is not a tour is split at the
+ * city with the most tree edges, as Volgenant and Jonker do: without its first free tree edge, with
+ * it but without the second, and with both. Fixed edges are propagated: a city with two edges in
+ * loses all others, a city with only two edges left keeps them, and an edge that would close a path
+ * of fixed edges before it visits every city is left out. Subproblems are solved depth first on a
+ * fork-join pool, whose idle threads steal the ones nearest the root. A subproblem holds its edge
+ * states and penalties until its children are done, so memory grows with the depth of the search,
+ * about n^2 bytes per level.
+ *
+ * The search is seeded with a known tour and drops every subproblem whose bound cannot beat the
+ * shortest tour so far. If it is stopped early, the smallest bound among the subproblems it left
+ * unsolved is still a lower bound on the optimum, which gives the remaining gap.
+ */
+public class BranchAndBound {
+
+    private static final long NO_DEADLINE = Long.MAX_VALUE;
+    private static final byte FREE = 0;
+    private static final byte IN = 1;
+    private static final byte OUT = 2;
+    private static final int ROOT_ITERATIONS = 1000;
+    private static final int NODE_ITERATIONS = 50;
+    private static final int PATIENCE = 10;
+    private static final double MIN_STEP_SCALE = 1e-4;
+    private static final double TOLERANCE = 1e-9;
+
+    private final int cityCount;
+    private final double[][] distances;
+    private final boolean integral;
+    private long timeLimitMillis;
+    private ProgressListener progressListener;
+    private SolverMetrics metrics = new SolverMetrics("BranchAndBound");
+    private volatile double upperBound;
+    private int[] bestTour;
+    private long deadline = NO_DEADLINE;
+    private volatile boolean timedOut;
+    private DoubleAccumulator openBound;
+    private double lowerBound;
+    private ProgressTracker progress;
+
+    /**
+     * Creates a solver for one instance.
+     *
+     * @param distances The distance between every pair of cities, with dynaTSP.BIG_NUMBER on the diagonal.
+     */
+    public BranchAndBound(double[][] distances) {
+        this.cityCount = distances.length;
+        this.distances = distances;
+        boolean whole = true;
+        for (int i = 0; i < cityCount && whole; i++) {
+            for (int j = 0; j < cityCount && whole; j++) {
+                whole = i == j || distances[i][j] == Math.rint(distances[i][j]);
+            }
+        }
+        this.integral = whole;
+    }
+
+    /**
+     * Limits the time a solve may take. When the limit is reached the solve returns the shortest
+     * tour found so far, and {@link #getLowerBound} tells how far from optimal it may be.
+     *
+     * @param millis The time limit in milliseconds, or 0 for none.
+     */
+    public void setTimeLimit(long millis) {
+        timeLimitMillis = millis;
+    }
+
+    /**
+     * Sets the listener told about the shortest tour so far and the number of subproblems solved.
+     *
+     * @param listener The listener, or null for none.
+     */
+    public void setProgressListener(ProgressListener listener) {
+        progressListener = listener;
+    }
+
+    /**
+     * Sets the metrics solves report their phase times and counters to.
+     *
+     * @param metrics The metrics, possibly shared with other solvers.
+     */
+    public void setMetrics(SolverMetrics metrics) {
+        this.metrics = metrics;
+        metrics.perSecond("bnb.nodesPerSecond", "bnb.nodes", "search");
+    }
+
+    /**
+     * @return The phase times and counters of all solves so far.
+     */
+    public SolverMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Tells whether the last solve ran out of time, in which case its tour need not be optimal.
+     *
+     * @return true if the time limit was reached; false otherwise.
+     */
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * Gets the lower bound the last solve proved. It equals the tour length if the solve finished.
+     *
+     * @return No tour is shorter than this.
+     */
+    public double getLowerBound() {
+        return lowerBound;
+    }
+
+    /**
+     * Solves the instance.
+     *
+     * @param threads The number of worker threads to use.
+     * @param incumbent A known tour starting at city 0, or null to start from a nearest neighbour tour.
+     * @return The optimal tour, or the shortest tour found in time if the time limit was reached.
+     */
+    @SuppressWarnings("try")
+    public TourResult solve(int threads, TourResult incumbent) {
+        int n = cityCount;
+        deadline = timeLimitMillis > 0 ? System.nanoTime() + timeLimitMillis * 1000000L : NO_DEADLINE;
+        timedOut = false;
+        if (n <= 3) {
+            // Every order of three cities is the same tour.
+            int[] tour = new int[n];
+            for (int i = 0; i < n; i++) {
+                tour[i] = i;
+            }
+            double cost = n == 1 ? 0 : Geometry.tourLength(distances, tour);
+            lowerBound = cost;
+            return new TourResult(tour, cost);
+        }
+        TourResult start = incumbent != null ? incumbent : nearestNeighborTour();
+        upperBound = start.getCost();
+        bestTour = start.getTour().clone();
+        openBound = new DoubleAccumulator(Math::min, Double.POSITIVE_INFINITY);
+        progress = ProgressTracker.of("BranchAndBound", "nodes", progressListener);
+
+        byte[] status = new byte[n * n];
+        for (int city = 0; city < n; city++) {
+            status[city * n + city] = OUT;
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try (SolverMetrics.Phase phase = metrics.time("search")) {
+            pool.invoke(new Subproblem(status, new double[n], 0, new int[0], true));
+        } finally {
+            pool.shutdown();
+        }
+        TourResult result;
+        synchronized (this) {
+            result = new TourResult(bestTour, upperBound);
+        }
+        lowerBound = timedOut ? Math.min(openBound.get(), result.getCost()) : result.getCost();
+        if (progress != null) {
+            progress.finish(result.getCost());
+        }
+        return result;
+    }
+
+    /**
+     * A subproblem: the edge states of its parent, the edges it fixes on top of them, and the
+     * penalties its parent ended with, to start the ascent from.
+     */
+    private final class Subproblem extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final byte[] parentStatus;
+        private final double[] parentPenalties;
+        private final double parentBound;
+        private final int[] fixes;
+        private final boolean root;
+
+        /**
+         * @param fixes Edges to fix: the edge index i * n + j to put an edge in, its complement to leave it out.
+         */
+        Subproblem(byte[] parentStatus, double[] parentPenalties, double parentBound, int[] fixes, boolean root) {
+            this.parentStatus = parentStatus;
+            this.parentPenalties = parentPenalties;
+            this.parentBound = parentBound;
+            this.fixes = fixes;
+            this.root = root;
+        }
+
+        @Override
+        protected void compute() {
+            if (timedOut || (deadline != NO_DEADLINE && System.nanoTime() - deadline >= 0)) {
+                // Left unsolved: its parent's bound still holds for it.
+                timedOut = true;
+                openBound.accumulate(parentBound);
+                return;
+            }
+            if (cannotImprove(parentBound)) {
+                // The incumbent improved since the parent was split.
+                metrics.add("bnb.pruned", 1);
+                return;
+            }
+            metrics.add("bnb.nodes", 1);
+            if (progress != null) {
+                progress.update(1, upperBound);
+            }
+            byte[] status = parentStatus.clone();
+            for (int fix : fixes) {
+                if (fix >= 0) {
+                    fixEdge(status, fix / cityCount, fix % cityCount, IN);
+                } else {
+                    fixEdge(status, ~fix / cityCount, ~fix % cityCount, OUT);
+                }
+            }
+            if (!propagate(status)) {
+                metrics.add("bnb.pruned", 1);
+                return;
+            }
+            double[] penalties = parentPenalties.clone();
+            OneTree best = new OneTree();
+            double bound = ascend(status, penalties, best, root ? ROOT_ITERATIONS : NODE_ITERATIONS);
+            if (best.isTour() || cannotImprove(bound)) {
+                metrics.add("bnb.pruned", 1);
+                return;
+            }
+            invokeAll(split(status, penalties, Math.max(bound, parentBound), best));
+        }
+    }
+
+    /**
+     * Splits a subproblem at the city with the most tree edges.
+     */
+    private Subproblem[] split(byte[] status, double[] penalties, double bound, OneTree tree) {
+        int n = cityCount;
+        int city = 0;
+        for (int i = 1; i < n; i++) {
+            if (tree.degree[i] > tree.degree[city]) {
+                city = i;
+            }
+        }
+        int first = -1;
+        int second = -1;
+        for (int e = 0; e < n; e++) {
+            int other = tree.from[e] == city ? tree.to[e] : tree.to[e] == city ? tree.from[e] : -1;
+            if (other >= 0 && status[city * n + other] == FREE) {
+                if (first < 0) {
+                    first = city * n + other;
+                } else if (second < 0) {
+                    second = city * n + other;
+                }
+            }
+        }
+        int fixedIn = 0;
+        for (int other = 0; other < n; other++) {
+            if (status[city * n + other] == IN) {
+                fixedIn++;
+            }
+        }
+        // With one edge already in, putting the first in completes the city.
+        if (fixedIn == 1) {
+            return new Subproblem[] {
+                new Subproblem(status, penalties, bound, new int[] {~first}, false),
+                new Subproblem(status, penalties, bound, new int[] {first}, false)
+            };
+        }
+        return new Subproblem[] {
+            new Subproblem(status, penalties, bound, new int[] {~first}, false),
+            new Subproblem(status, penalties, bound, new int[] {first, ~second}, false),
+            new Subproblem(status, penalties, bound, new int[] {first, second}, false)
+        };
+    }
+
+    /**
+     * Raises the 1-tree bound of a subproblem by subgradient ascent. The step is the usual
+     * (upper bound - 1-tree length) / |subgradient|^2, scaled down by half whenever the bound has
+     * not improved for a few iterations.
+     *
+     * @param status The edge states.
+     * @param penalties The penalties to start from; receives those of the best bound.
+     * @param best Receives the 1-tree of the best bound.
+     * @param iterations The maximum number of iterations.
+     * @return The best bound, or infinity if the subproblem has no 1-tree.
+     */
+    private double ascend(byte[] status, double[] penalties, OneTree best, int iterations) {
+        int n = cityCount;
+        OneTree tree = new OneTree();
+        double[] bestPenalties = penalties.clone();
+        double bound = Double.NEGATIVE_INFINITY;
+        double scale = 1;
+        int sinceBetter = 0;
+        int iteration = 0;
+        for (; iteration < iterations && scale > MIN_STEP_SCALE; iteration++) {
+            if (!tree.build(status, penalties)) {
+                metrics.add("bnb.ascentIterations", iteration + 1);
+                return Double.POSITIVE_INFINITY;
+            }
+            if (tree.isTour()) {
+                best.copyFrom(tree);
+                offer(tree.toTour());
+                bound = tree.length;
+                iteration++;
+                break;
+            }
+            if (tree.length > bound) {
+                bound = tree.length;
+                best.copyFrom(tree);
+                System.arraycopy(penalties, 0, bestPenalties, 0, n);
+                sinceBetter = 0;
+            } else if (++sinceBetter == PATIENCE) {
+                scale /= 2;
+                sinceBetter = 0;
+            }
+            if (cannotImprove(bound)) {
+                iteration++;
+                break;
+            }
+            int norm = 0;
+            for (int city = 0; city < n; city++) {
+                int excess = tree.degree[city] - 2;
+                norm += excess * excess;
+            }
+            double step = scale * (upperBound - tree.length) / norm;
+            for (int city = 0; city < n; city++) {
+                penalties[city] += step * (tree.degree[city] - 2);
+            }
+        }
+        metrics.add("bnb.ascentIterations", iteration);
+        if (!best.isTour()) {
+            System.arraycopy(bestPenalties, 0, penalties, 0, n);
+        }
+        return bound;
+    }
+
+    /**
+     * Tells whether a subproblem with the given bound can hold a tour shorter than the incumbent.
+     * With whole-number distances every tour length is whole, so the bound is rounded up.
+     */
+    private boolean cannotImprove(double bound) {
+        double upper = upperBound;
+        if (integral) {
+            return Math.ceil(bound - TOLERANCE * upper) >= upper;
+        }
+        return bound >= upper - TOLERANCE * upper;
+    }
+
+    /**
+     * Keeps a tour if it is shorter than the incumbent.
+     */
+    private synchronized void offer(int[] tour) {
+        double cost = Geometry.tourLength(distances, tour);
+        if (cost < upperBound) {
+            bestTour = tour;
+            upperBound = cost;
+            metrics.add("bnb.incumbents", 1);
+        }
+    }
+
+    private void fixEdge(byte[] status, int i, int j, byte state) {
+        status[i * cityCount + j] = state;
+        status[j * cityCount + i] = state;
+    }
+
+    /**
+     * Applies the consequences of the fixed edges until nothing changes.
+     *
+     * @return false if no tour has the fixed edges; true otherwise.
+     */
+    private boolean propagate(byte[] status) {
+        int n = cityCount;
+        int[] fixedIn = new int[n];
+        int[] ends = new int[2 * n];
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            Arrays.fill(ends, -1);
+            for (int city = 0; city < n; city++) {
+                int in = 0;
+                int free = 0;
+                for (int other = 0; other < n; other++) {
+                    byte state = status[city * n + other];
+                    if (state == IN) {
+                        if (in < 2) {
+                            ends[2 * city + in] = other;
+                        }
+                        in++;
+                    } else if (state == FREE) {
+                        free++;
+                    }
+                }
+                if (in > 2 || in + free < 2) {
+                    return false;
+                }
+                fixedIn[city] = in;
+                if (free > 0 && (in == 2 || in + free == 2)) {
+                    byte state = in == 2 ? OUT : IN;
+                    for (int other = 0; other < n; other++) {
+                        if (status[city * n + other] == FREE) {
+                            fixEdge(status, city, other, state);
+                        }
+                    }
+                    changed = true;
+                }
+            }
+            if (changed) {
+                continue;
+            }
+            // Walk every path of fixed edges; the edge joining its ends would close a short cycle.
+            boolean[] seen = new boolean[n];
+            for (int city = 0; city < n; city++) {
+                if (fixedIn[city] != 1 || seen[city]) {
+                    continue;
+                }
+                int previous = -1;
+                int current = city;
+                int length = 1;
+                seen[city] = true;
+                while (true) {
+                    int next = ends[2 * current] != previous ? ends[2 * current] : ends[2 * current + 1];
+                    if (fixedIn[current] == 1 && current != city || next < 0) {
+                        break;
+                    }
+                    previous = current;
+                    current = next;
+                    seen[current] = true;
+                    length++;
+                }
+                if (length < n && status[city * n + current] == FREE) {
+                    fixEdge(status, city, current, OUT);
+                    changed = true;
+                }
+            }
+            // Cities with two fixed edges that no path reached lie on a cycle, which must be the tour.
+            for (int city = 0; city < n; city++) {
+                if (fixedIn[city] == 2 && !seen[city] && cycleLength(ends, city) < n) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static int cycleLength(int[] ends, int start) {
+        int previous = ends[2 * start + 1];
+        int current = start;
+        int length = 0;
+        do {
+            int next = ends[2 * current] != previous ? ends[2 * current] : ends[2 * current + 1];
+            previous = current;
+            current = next;
+            length++;
+        } while (current != start);
+        return length;
+    }
+
+    /**
+     * Builds a tour by always moving to the nearest unvisited city, for a solve without an incumbent.
+     */
+    private TourResult nearestNeighborTour() {
+        int n = cityCount;
+        int[] tour = new int[n];
+        boolean[] visited = new boolean[n];
+        visited[0] = true;
+        for (int step = 1; step < n; step++) {
+            int from = tour[step - 1];
+            int nearest = -1;
+            for (int city = 1; city < n; city++) {
+                if (!visited[city] && (nearest < 0 || distances[from][city] < distances[from][nearest])) {
+                    nearest = city;
+                }
+            }
+            tour[step] = nearest;
+            visited[nearest] = true;
+        }
+        return new TourResult(tour, Geometry.tourLength(distances, tour));
+    }
+
+    /**
+     * A 1-tree under given penalties and edge states: n edges and the degree of every city.
+     */
+    private final class OneTree {
+        final int[] from = new int[cityCount];
+        final int[] to = new int[cityCount];
+        final int[] degree = new int[cityCount];
+        double length;
+
+        /**
+         * Builds the shortest 1-tree that has every edge fixed in and none fixed out, with Prim's
+         * algorithm preferring fixed edges over all others.
+         *
+         * @return false if there is no such 1-tree; true otherwise.
+         */
+        boolean build(byte[] status, double[] penalties) {
+            int n = cityCount;
+            double[] key = new double[n];
+            boolean[] keyFixed = new boolean[n];
+            int[] parent = new int[n];
+            boolean[] inTree = new boolean[n];
+            Arrays.fill(key, Double.POSITIVE_INFINITY);
+            Arrays.fill(degree, 0);
+            double sum = 0;
+            int edges = 0;
+            int city = 1;
+            inTree[1] = true;
+            for (int added = 1; added < n - 1; added++) {
+                int next = -1;
+                for (int other = 2; other < n; other++) {
+                    if (inTree[other]) {
+                        continue;
+                    }
+                    byte state = status[city * n + other];
+                    if (state != OUT) {
+                        double weight = distances[city][other] + penalties[city] + penalties[other];
+                        boolean fixed = state == IN;
+                        if (fixed && !keyFixed[other] || fixed == keyFixed[other] && weight < key[other]) {
+                            key[other] = weight;
+                            keyFixed[other] = fixed;
+                            parent[other] = city;
+                        }
+                    }
+                    if (next < 0 || keyFixed[other] && !keyFixed[next]
+                            || keyFixed[other] == keyFixed[next] && key[other] < key[next]) {
+                        next = other;
+                    }
+                }
+                if (key[next] == Double.POSITIVE_INFINITY) {
+                    return false;
+                }
+                inTree[next] = true;
+                sum += key[next];
+                addEdge(edges++, parent[next], next);
+                city = next;
+            }
+            // The two edges of city 0: fixed ones first, then the shortest.
+            for (int pick = 0; pick < 2; pick++) {
+                int best = -1;
+                boolean bestFixed = false;
+                double bestWeight = Double.POSITIVE_INFINITY;
+                for (int other = 1; other < n; other++) {
+                    byte state = status[other];
+                    if (state == OUT || pick == 1 && other == to[edges - 1]) {
+                        continue;
+                    }
+                    double weight = distances[0][other] + penalties[0] + penalties[other];
+                    boolean fixed = state == IN;
+                    if (best < 0 || fixed && !bestFixed || fixed == bestFixed && weight < bestWeight) {
+                        best = other;
+                        bestFixed = fixed;
+                        bestWeight = weight;
+                    }
+                }
+                if (best < 0) {
+                    return false;
+                }
+                sum += bestWeight;
+                addEdge(edges++, 0, best);
+            }
+            double penaltySum = 0;
+            for (double penalty : penalties) {
+                penaltySum += penalty;
+            }
+            length = sum - 2 * penaltySum;
+            return true;
+        }
+
+        private void addEdge(int index, int a, int b) {
+            from[index] = a;
+            to[index] = b;
+            degree[a]++;
+            degree[b]++;
+        }
+
+        boolean isTour() {
+            for (int d : degree) {
+                if (d != 2) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void copyFrom(OneTree other) {
+            System.arraycopy(other.from, 0, from, 0, cityCount);
+            System.arraycopy(other.to, 0, to, 0, cityCount);
+            System.arraycopy(other.degree, 0, degree, 0, cityCount);
+            length = other.length;
+        }
+
+        /**
+         * Lists the cities of a 1-tree that is a tour, starting at city 0.
+         */
+        int[] toTour() {
+            int n = cityCount;
+            int[] ends = new int[2 * n];
+            int[] count = new int[n];
+            for (int e = 0; e < n; e++) {
+                ends[2 * from[e] + count[from[e]]++] = to[e];
+                ends[2 * to[e] + count[to[e]]++] = from[e];
+            }
+            int[] tour = new int[n];
+            int previous = -1;
+            for (int i = 1; i < n; i++) {
+                int current = tour[i - 1];
+                tour[i] = ends[2 * current] != previous ? ends[2 * current] : ends[2 * current + 1];
+                previous = current;
+            }
+            return tour;
+        }
+    }
+}
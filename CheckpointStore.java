@@ -0,0 +1,231 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Checkpoints of a layer by layer dynaTSP solve, kept in a directory.
+ *
+ * Every completed layer gets a file of predecessors, written once and in the order the subsets
+ * are solved. The costs are only written for the most recent layer, since that is the only layer
+ * the next one reads. A small manifest, replaced atomically, records which layer is the last
+ * complete one, so a checkpoint interrupted half way is simply ignored on resume. Every file is
+ * forced to disk before it is renamed into place, so the manifest never names data that a crash
+ * could still lose.
+ */
+class CheckpointStore {
+
+    private static final int MAGIC = 0x54535043;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final Path directory;
+    private final int cityCount;
+    private final long instanceHash;
+    private int savedSize = 1;
+
+    /**
+     * Opens a checkpoint directory, creating it if needed.
+     *
+     * @param directory The directory holding the checkpoint files.
+     * @param cityCount The number of cities of the instance.
+     * @param instanceHash A hash of the instance, used to reject checkpoints of other instances.
+     * @throws IOException If the directory cannot be created.
+     */
+    CheckpointStore(Path directory, int cityCount, long instanceHash) throws IOException {
+        this.directory = directory;
+        this.cityCount = cityCount;
+        this.instanceHash = instanceHash;
+        Files.createDirectories(directory);
+    }
+
+    /**
+     * Hashes a distance matrix so a checkpoint can only be resumed on the instance it was taken from.
+     *
+     * @param distances The distances between every pair of cities.
+     * @return The hash of the matrix.
+     */
+    static long hash(double[][] distances) {
+        long hash = distances.length;
+        for (double[] row : distances) {
+            for (double distance : row) {
+                hash = hash * 31 + Double.doubleToLongBits(distance);
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Reads the manifest to find the last layer that was completely saved.
+     *
+     * @return The size of the subsets in the last saved layer, or 1 if there is no checkpoint.
+     * @throws IOException If the manifest cannot be read or belongs to another instance.
+     */
+    int lastSavedSize() throws IOException {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(directory.resolve("manifest")))) {
+            if (in.readInt() != MAGIC || in.readInt() != cityCount || in.readLong() != instanceHash) {
+                throw new IOException("Checkpoint in " + directory + " belongs to a different instance");
+            }
+            savedSize = in.readInt();
+            return savedSize;
+        } catch (NoSuchFileException e) {
+            return 1;
+        }
+    }
+
+    /**
+     * Saves every layer completed since the previous checkpoint.
+     * Costs of the older layers may already have been dropped by the table, so only their
+     * predecessors are written.
+     *
+     * @param table The table being solved.
+     * @param completedSize The size of the subsets in the last completed layer.
+     * @throws IOException If a file cannot be written.
+     */
+    void save(TspTable table, int completedSize) throws IOException {
+        for (int size = savedSize + 1; size <= completedSize; size++) {
+            int[] layer = dynaTSP.subsetsOfSize(cityCount, size);
+            write(predecessorFile(size), out -> {
+                for (int subset : layer) {
+                    for (int city = 1; city < cityCount; city++) {
+                        if ((subset & (1 << city)) != 0) {
+                            out.writeByte(table.getPredecessor(city, subset));
+                        }
+                    }
+                }
+            });
+        }
+        int[] layer = dynaTSP.subsetsOfSize(cityCount, completedSize);
+        write(costFile(completedSize), out -> {
+            for (int subset : layer) {
+                for (int city = 1; city < cityCount; city++) {
+                    if ((subset & (1 << city)) != 0) {
+                        out.writeDouble(table.getCost(city, subset));
+                    }
+                }
+            }
+        });
+        write(directory.resolve("manifest"), out -> {
+            out.writeInt(MAGIC);
+            out.writeInt(cityCount);
+            out.writeLong(instanceHash);
+            out.writeInt(completedSize);
+        });
+        if (savedSize > 1) {
+            Files.deleteIfExists(costFile(savedSize));
+        }
+        savedSize = completedSize;
+    }
+
+    /**
+     * Loads the last saved checkpoint into a freshly reset table.
+     * The layers are started and finished in order, as during a solve.
+     *
+     * @param table The table to fill.
+     * @throws IOException If a checkpoint file is missing or cannot be read.
+     */
+    void restore(TspTable table) throws IOException {
+        for (int size = 2; size <= savedSize; size++) {
+            int[] layer = dynaTSP.subsetsOfSize(cityCount, size);
+            table.startLayer(size);
+            try (DataInputStream predecessors = open(predecessorFile(size));
+                 DataInputStream costs = size == savedSize ? open(costFile(size)) : null) {
+                for (int subset : layer) {
+                    for (int city = 1; city < cityCount; city++) {
+                        if ((subset & (1 << city)) != 0) {
+                            int predecessor = predecessors.readByte();
+                            double cost = costs != null ? costs.readDouble() : dynaTSP.BIG_NUMBER;
+                            table.update(city, subset, cost, predecessor);
+                        }
+                    }
+                }
+            }
+            table.finishLayer(size);
+        }
+    }
+
+    /**
+     * Removes every checkpoint file, including temporaries left by an interrupted checkpoint.
+     *
+     * @throws IOException If a file cannot be deleted.
+     */
+    void clear() throws IOException {
+        delete(directory.resolve("manifest"));
+        for (int size = 2; size <= cityCount; size++) {
+            delete(predecessorFile(size));
+            delete(costFile(size));
+        }
+        savedSize = 1;
+    }
+
+    private void delete(Path file) throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(file.resolveSibling(file.getFileName() + ".tmp"));
+    }
+
+    private Path predecessorFile(int size) {
+        return directory.resolve("predecessors-" + size + ".bin");
+    }
+
+    private Path costFile(int size) {
+        return directory.resolve("costs-" + size + ".bin");
+    }
+
+    /**
+     * Writes the content of a checkpoint file.
+     */
+    private interface Content {
+        void writeTo(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * Writes a file through a temporary file, so it is either complete or absent. The temporary
+     * file is forced to disk before it replaces the target, and the directory after; if writing
+     * fails, the temporary file is deleted and the target is left as it was.
+     *
+     * @param target The file to write.
+     * @param content Writes the content.
+     * @throws IOException If the file cannot be written.
+     */
+    private void write(Path target, Content content) throws IOException {
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        boolean written = false;
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel),
+                    BUFFER_SIZE));
+            content.writeTo(out);
+            out.flush();
+            channel.force(true);
+            written = true;
+        } finally {
+            if (!written) {
+                Files.deleteIfExists(temporary);
+            }
+        }
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory();
+    }
+
+    /**
+     * Forces the directory entries to disk, so a rename survives a crash.
+     */
+    private void syncDirectory() {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Some platforms cannot open a directory; there the rename is as durable as it gets.
+        }
+    }
+
+    private DataInputStream open(Path file) throws IOException {
+        return new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE));
+    }
+}
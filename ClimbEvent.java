@@ -0,0 +1,33 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event spanning one climb of climbTSP, from its start tour to its local optimum.
+ */
+@Name("tpssolver.Climb")
+@Label("Climb")
+@Category("TSP Solver")
+@Description("One hill climb from a start tour")
+class ClimbEvent extends Event {
+
+    @Label("Cities")
+    int cities;
+
+    @Label("Iterations")
+    long iterations;
+
+    @Label("Moves Evaluated")
+    long evaluations;
+
+    @Label("Moves Accepted")
+    long accepted;
+
+    @Label("Stopped On Plateau")
+    boolean plateau;
+
+    @Label("Tour Length")
+    double length;
+}
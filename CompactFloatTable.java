@@ -0,0 +1,50 @@
+import java.util.Arrays;
+
+/**
+ * Compact table that stores costs as floats, halving the cost storage.
+ * Costs lose precision beyond about seven significant digits, so ties between nearly equal
+ * paths may be broken differently than with double costs.
+ */
+class CompactFloatTable extends CompactTable {
+
+    private final float[] costs;
+
+    /**
+     * Allocates a compact float table.
+     *
+     * @param cityCount The number of cities.
+     */
+    CompactFloatTable(int cityCount) {
+        super(cityCount, false);
+        costs = new float[(int) cellCount(cityCount)];
+    }
+
+    @Override
+    public int bytesPerEntry() {
+        return Float.BYTES + Byte.BYTES;
+    }
+
+    @Override
+    public void reset() {
+        // Unset entries are infinite so that BIG_NUMBER, which a float cannot represent exactly,
+        // can still be returned unchanged by getCost.
+        Arrays.fill(costs, Float.POSITIVE_INFINITY);
+        clearPredecessors();
+    }
+
+    @Override
+    public double getCost(int city, int subset) {
+        if (city == 0) {
+            return subset == 1 ? 0 : dynaTSP.BIG_NUMBER;
+        }
+        float cost = costs[index(city, subset)];
+        return cost == Float.POSITIVE_INFINITY ? dynaTSP.BIG_NUMBER : cost;
+    }
+
+    @Override
+    public void update(int city, int subset, double cost, int predecessor) {
+        int index = index(city, subset);
+        costs[index] = (float) cost;
+        setPredecessor(index, predecessor);
+    }
+}
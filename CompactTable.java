@@ -0,0 +1,131 @@
+import java.util.Arrays;
+
+/**
+ * Table layout that only stores what the solver actually reads.
+ *
+ * Every subset the solver touches contains city 0, so bit 0 is dropped from the subset index,
+ * and the row for city 0 is replaced by the single seed entry. The remaining entries are kept
+ * in one flat array ordered by subset, so all cities of one subset are next to each other.
+ * Predecessors fit in a byte because a subset can have at most 31 cities.
+ */
+class CompactTable implements TspTable {
+
+    protected final int rowLength;
+    private final double[] costs;
+    private final byte[] predecessors;
+
+    /**
+     * Allocates a compact table.
+     *
+     * @param cityCount The number of cities.
+     */
+    CompactTable(int cityCount) {
+        this(cityCount, true);
+    }
+
+    /**
+     * Allocates the predecessors, and the costs if they are stored as doubles.
+     *
+     * @param cityCount The number of cities.
+     * @param doubleCosts Whether to allocate the double cost array.
+     */
+    protected CompactTable(int cityCount, boolean doubleCosts) {
+        rowLength = cityCount - 1;
+        int cells = (int) cellCount(cityCount);
+        costs = doubleCosts ? new double[cells] : null;
+        predecessors = new byte[cells];
+    }
+
+    /**
+     * Counts the entries of a compact table.
+     *
+     * @param cityCount The number of cities.
+     * @return The number of (city, subset) entries stored.
+     */
+    static long cellCount(int cityCount) {
+        return (long) (cityCount - 1) << (cityCount - 1);
+    }
+
+    /**
+     * Calculates how much memory a compact table needs.
+     *
+     * @param cityCount The number of cities.
+     * @param costBytes The size of one stored cost.
+     * @return The size of the table in bytes.
+     */
+    static long requiredBytes(int cityCount, int costBytes) {
+        return cellCount(cityCount) * (costBytes + Byte.BYTES);
+    }
+
+    /**
+     * Finds the position of an entry in the flat arrays.
+     *
+     * @param city The city, which must not be city 0.
+     * @param subset The subset, which must contain city 0.
+     * @return The index of the entry.
+     */
+    protected final int index(int city, int subset) {
+        return (subset >>> 1) * rowLength + city - 1;
+    }
+
+    @Override
+    public void reset() {
+        Arrays.fill(costs, dynaTSP.BIG_NUMBER);
+        Arrays.fill(predecessors, (byte) -1);
+    }
+
+    @Override
+    public double getCost(int city, int subset) {
+        if (city == 0) {
+            return subset == 1 ? 0 : dynaTSP.BIG_NUMBER;
+        }
+        return costs[index(city, subset)];
+    }
+
+    @Override
+    public int getPredecessor(int city, int subset) {
+        return city == 0 ? -1 : predecessors[index(city, subset)];
+    }
+
+    @Override
+    public void update(int city, int subset, double cost, int predecessor) {
+        int index = index(city, subset);
+        costs[index] = cost;
+        predecessors[index] = (byte) predecessor;
+    }
+
+    /**
+     * Gives direct access to the costs, for kernels that work on the flat layout.
+     *
+     * @return The costs, or null if they are not stored as doubles.
+     */
+    final double[] costArray() {
+        return costs;
+    }
+
+    /**
+     * Gives direct access to the predecessors, for kernels that work on the flat layout.
+     *
+     * @return The predecessors.
+     */
+    final byte[] predecessorArray() {
+        return predecessors;
+    }
+
+    /**
+     * Stores a predecessor without touching the costs.
+     *
+     * @param index The index of the entry.
+     * @param predecessor The city visited before the entry's city.
+     */
+    protected final void setPredecessor(int index, int predecessor) {
+        predecessors[index] = (byte) predecessor;
+    }
+
+    /**
+     * Resets every predecessor to -1.
+     */
+    protected final void clearPredecessors() {
+        Arrays.fill(predecessors, (byte) -1);
+    }
+}
@@ -0,0 +1,53 @@
+import java.util.stream.IntStream;
+
+/**
+ * Full matrix of double distances, 8 bytes per ordered pair of cities.
+ */
+class DenseDistances implements DistanceOracle {
+
+    private final int cityCount;
+    private final double[] distances;
+
+    /**
+     * Computes every distance of an instance, in parallel.
+     *
+     * @param instance The cities.
+     */
+    DenseDistances(TspInstance instance) {
+        cityCount = instance.size();
+        if ((long) cityCount * cityCount > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Too many cities for a dense distance matrix: " + cityCount);
+        }
+        distances = new double[cityCount * cityCount];
+        IntStream.range(0, cityCount).parallel().forEach(i -> {
+            for (int j = 0; j < cityCount; j++) {
+                distances[i * cityCount + j] = i == j ? 0 : instance.distance(i, j);
+            }
+        });
+    }
+
+    /**
+     * Calculates the memory a matrix needs.
+     *
+     * @param cityCount The number of cities.
+     * @return The size in bytes.
+     */
+    static long requiredBytes(int cityCount) {
+        return 8L * cityCount * cityCount;
+    }
+
+    @Override
+    public int size() {
+        return cityCount;
+    }
+
+    @Override
+    public double distance(int i, int j) {
+        return distances[i * cityCount + j];
+    }
+
+    @Override
+    public long memoryBytes() {
+        return requiredBytes(cityCount);
+    }
+}
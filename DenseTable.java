@@ -0,0 +1,63 @@
+import java.util.Arrays;
+
+/**
+ * The original table layout: one row of 2^n costs and predecessors for every city.
+ * Simple to index, but half of the columns (subsets without city 0) are never used.
+ */
+class DenseTable implements TspTable {
+
+    private final int cityCount;
+    private final double[][] costs;
+    private final int[][] predecessors;
+
+    /**
+     * Allocates a dense table.
+     *
+     * @param cityCount The number of cities.
+     */
+    DenseTable(int cityCount) {
+        this.cityCount = cityCount;
+        costs = new double[cityCount][1 << cityCount];
+        predecessors = new int[cityCount][1 << cityCount];
+    }
+
+    /**
+     * Calculates how much memory a dense table needs.
+     *
+     * @param cityCount The number of cities.
+     * @return The size of the table in bytes.
+     */
+    static long requiredBytes(int cityCount) {
+        return (long) cityCount * (1L << cityCount) * (Double.BYTES + Integer.BYTES);
+    }
+
+    @Override
+    public int bytesPerEntry() {
+        return Double.BYTES + Integer.BYTES;
+    }
+
+    @Override
+    public void reset() {
+        for (int i = 0; i < cityCount; i++) {
+            Arrays.fill(costs[i], dynaTSP.BIG_NUMBER);
+            Arrays.fill(predecessors[i], -1);
+        }
+        costs[0][1] = 0;
+    }
+
+    @Override
+    public double getCost(int city, int subset) {
+        return costs[city][subset];
+    }
+
+    @Override
+    public int getPredecessor(int city, int subset) {
+        return predecessors[city][subset];
+    }
+
+    @Override
+    public void update(int city, int subset, double cost, int predecessor) {
+        costs[city][subset] = cost;
+        predecessors[city][subset] = predecessor;
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * Answers the distance between two cities. Implementations trade memory for speed: a full matrix,
+ * a packed float triangle, or computing each distance when asked with a cache of recent edges.
+ * All of them are safe to share between threads.
+ */
+interface DistanceOracle {
+
+    /** Largest instance that gets a full matrix in automatic mode. */
+    int DENSE_LIMIT = 2048;
+    /** Largest instance that gets a packed triangle in automatic mode. */
+    int PACKED_LIMIT = 16384;
+
+    /**
+     * Gets the number of cities.
+     *
+     * @return The number of cities.
+     */
+    int size();
+
+    /**
+     * Gets the distance between two different cities.
+     *
+     * @param i The first city.
+     * @param j The second city.
+     * @return The distance.
+     */
+    double distance(int i, int j);
+
+    /**
+     * Gets the memory the oracle holds.
+     *
+     * @return The size in bytes.
+     */
+    long memoryBytes();
+
+    /**
+     * Creates an oracle for an instance.
+     *
+     * "auto" uses a full matrix up to {@value #DENSE_LIMIT} cities and a packed triangle up to
+     * {@value #PACKED_LIMIT} cities, as long as it takes no more than half of the free heap, and
+     * otherwise computes distances as needed. Beyond those sizes a lookup in a table that does not
+     * fit in the CPU caches is no faster than computing the distance again.
+     *
+     * @param instance The cities.
+     * @param mode "dense", "packed", "lazy" or "auto".
+     * @return The oracle.
+     * @throws IllegalArgumentException If the mode is unknown or the table does not fit in the heap.
+     */
+    static DistanceOracle create(TspInstance instance, String mode) {
+        int n = instance.size();
+        Runtime runtime = Runtime.getRuntime();
+        long free = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+        switch (mode) {
+            case "dense":
+                checkFits("dense", DenseDistances.requiredBytes(n), free);
+                return new DenseDistances(instance);
+            case "packed":
+                checkFits("packed", PackedDistances.requiredBytes(n), free);
+                return new PackedDistances(instance);
+            case "lazy":
+                return new LazyDistances(instance);
+            case "auto": {
+                if (n <= DENSE_LIMIT && DenseDistances.requiredBytes(n) <= free / 2) {
+                    return new DenseDistances(instance);
+                }
+                if (n <= PACKED_LIMIT && PackedDistances.requiredBytes(n) <= free / 2) {
+                    return new PackedDistances(instance);
+                }
+                return new LazyDistances(instance);
+            }
+            default:
+                throw new IllegalArgumentException("Unknown distance mode: " + mode);
+        }
+    }
+
+    /**
+     * Refuses a distance table that does not fit in the free heap.
+     *
+     * @param mode The name of the mode.
+     * @param required The size of the table in bytes.
+     * @param free The free heap in bytes.
+     * @throws IllegalArgumentException If the table does not fit.
+     */
+    private static void checkFits(String mode, long required, long free) {
+        if (required > free) {
+            throw new IllegalArgumentException("Distance table (" + mode + ") needs " + (required >> 20) + " MB, "
+                    + (free >> 20) + " MB available; use --distances lazy or increase the heap with -Xmx");
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * Distance and tour length kernels over coordinates held as two primitive arrays, one per axis.
+ * None of them allocate, so they can be used in the innermost loops of the solvers.
+ */
+final class Geometry {
+
+    private Geometry() {
+    }
+
+    /**
+     * Measures the straight-line distance between two cities.
+     *
+     * @param x The x coordinate of every city.
+     * @param y The y coordinate of every city.
+     * @param i The first city.
+     * @param j The second city.
+     * @return The distance.
+     */
+    static double distance(double[] x, double[] y, int i, int j) {
+        double dx = x[i] - x[j];
+        double dy = y[i] - y[j];
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * Measures the straight-line length of a closed tour.
+     *
+     * @param x The x coordinate of every city.
+     * @param y The y coordinate of every city.
+     * @param tour The cities in visiting order; the tour returns from the last to the first.
+     * @return The length.
+     */
+    static double tourLength(double[] x, double[] y, int[] tour) {
+        if (tour.length < 2) {
+            return 0;
+        }
+        int last = tour[tour.length - 1];
+        double length = 0;
+        for (int city : tour) {
+            length += distance(x, y, last, city);
+            last = city;
+        }
+        return length;
+    }
+
+    /**
+     * Measures the length of a closed tour with a distance oracle.
+     *
+     * @param distances The distance oracle.
+     * @param tour The cities in visiting order; the tour returns from the last to the first.
+     * @return The length.
+     */
+    static double tourLength(DistanceOracle distances, int[] tour) {
+        if (tour.length < 2) {
+            return 0;
+        }
+        int last = tour[tour.length - 1];
+        double length = 0;
+        for (int city : tour) {
+            length += distances.distance(last, city);
+            last = city;
+        }
+        return length;
+    }
+
+    /**
+     * Measures the length of a closed tour from a distance matrix.
+     *
+     * @param distances The distance between every pair of cities.
+     * @param tour The cities in visiting order; the tour returns from the last to the first.
+     * @return The length.
+     */
+    static double tourLength(double[][] distances, int[] tour) {
+        if (tour.length < 2) {
+            return 0;
+        }
+        int last = tour[tour.length - 1];
+        double length = 0;
+        for (int city : tour) {
+            length += distances[last][city];
+            last = city;
+        }
+        return length;
+    }
+}
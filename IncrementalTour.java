@@ -0,0 +1,502 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A tour that is kept good while cities are added, removed or moved, without solving again.
+ *
+ * A new or moved city goes where it lengthens the tour least among the edges at its nearest
+ * neighbours (cheapest insertion), and a removed city's two tour neighbours are joined. A
+ * {@link LocalSearch} then starts from the cities around the change only, so an update costs a few
+ * linear passes over the arrays instead of a whole climb. Instances of at most
+ * {@link #EXACT_LIMIT} cities are solved again exactly with {@link dynaTSP} after every change.
+ *
+ * Cities are numbered 0 to size() - 1. A new city gets the next number; when a city is removed,
+ * the city with the highest number takes over its number, so the numbers stay dense.
+ */
+public class IncrementalTour {
+
+    /** Instances up to this size are solved exactly after every change. */
+    public static final int EXACT_LIMIT = 12;
+
+    private static final int NEIGHBORS = 10;
+    private static final int REPAIR_ITERATIONS = 100000;
+    private static final int REPAIR_PLATEAU = 1000;
+
+    private final String name;
+    private final TspInstance.Metric metric;
+    private TspInstance instance;
+    private DistanceOracle distances;
+    private int[] tour;
+    private int[] neighbors;
+    private double[] reach; // squared distance from every city to its farthest listed neighbour
+
+    /**
+     * Starts from a solved instance.
+     *
+     * @param instance The cities. The coordinate arrays are copied.
+     * @param tour A tour of all cities, for example from {@link climbTSP} or {@link PartitionSolver}.
+     * @throws IllegalArgumentException If the tour is not a permutation of the cities.
+     */
+    public IncrementalTour(TspInstance instance, int[] tour) {
+        int n = instance.size();
+        boolean[] seen = new boolean[n];
+        if (tour.length != n) {
+            throw new IllegalArgumentException("Tour has " + tour.length + " cities, instance has " + n);
+        }
+        for (int city : tour) {
+            if (city < 0 || city >= n || seen[city]) {
+                throw new IllegalArgumentException("Tour visits city " + city + " twice or does not exist");
+            }
+            seen[city] = true;
+        }
+        this.name = instance.getName();
+        this.metric = instance.getMetric();
+        this.tour = tour.clone();
+        setCoordinates(instance.getX().clone(), instance.getY().clone());
+        if (n > EXACT_LIMIT) {
+            neighbors = new SpatialGrid(instance.getX(), instance.getY()).nearestNeighbors(NEIGHBORS);
+            computeReach();
+        }
+    }
+
+    /**
+     * @return The number of cities.
+     */
+    public int size() {
+        return tour.length;
+    }
+
+    /**
+     * @return The current cities. The instance is replaced, not changed, by later updates.
+     */
+    public TspInstance getInstance() {
+        return instance;
+    }
+
+    /**
+     * Gets the current tour.
+     *
+     * @return The tour, starting at city 0, and its length.
+     */
+    public TourResult getTour() {
+        if (tour.length == 0) {
+            return new TourResult(new int[0], 0);
+        }
+        int[] rotated = TourResult.startAtZero(tour);
+        return new TourResult(rotated, Geometry.tourLength(distances, rotated));
+    }
+
+    /**
+     * Adds a city and repairs the tour around it.
+     *
+     * @param x The x coordinate of the city.
+     * @param y The y coordinate of the city.
+     * @return The number of the new city, which is the old size.
+     */
+    public int insert(double x, double y) {
+        int n = tour.length;
+        double[] newX = Arrays.copyOf(instance.getX(), n + 1);
+        double[] newY = Arrays.copyOf(instance.getY(), n + 1);
+        newX[n] = x;
+        newY[n] = y;
+        setCoordinates(newX, newY);
+        if (n + 1 <= EXACT_LIMIT) {
+            tour = Arrays.copyOf(tour, n + 1);
+            tour[n] = n;
+            solveExactly();
+            return n;
+        }
+        if (neighbors == null) {
+            tour = Arrays.copyOf(tour, n + 1);
+            tour[n] = n;
+            neighbors = new SpatialGrid(newX, newY).nearestNeighbors(NEIGHBORS);
+            computeReach();
+            improve(tour);
+            return n;
+        }
+        if (neighbors.length < (n + 1) * NEIGHBORS) {
+            int capacity = Math.max(n + 1, neighbors.length / NEIGHBORS * 3 / 2);
+            neighbors = Arrays.copyOf(neighbors, capacity * NEIGHBORS);
+            reach = Arrays.copyOf(reach, capacity);
+        }
+        attachNeighbors(n);
+        tour = insertCheapest(tour, n);
+        improve(affected(n));
+        return n;
+    }
+
+    /**
+     * Removes a city and joins its two neighbours in the tour.
+     *
+     * @param city The city to remove.
+     * @return The old number of the city that now has the removed city's number, or -1 if the
+     *         removed city had the highest number.
+     */
+    public int delete(int city) {
+        int n = tour.length;
+        checkCity(city);
+        int last = n - 1;
+        int[] around = neighbors != null ? affected(city) : null;
+
+        // Take the city out of the tour, then give the last city its number.
+        int[] shorter = new int[n - 1];
+        int count = 0;
+        for (int c : tour) {
+            if (c != city) {
+                shorter[count++] = c == last ? city : c;
+            }
+        }
+        tour = shorter;
+        double[] newX = Arrays.copyOf(instance.getX(), n - 1);
+        double[] newY = Arrays.copyOf(instance.getY(), n - 1);
+        if (city != last) {
+            newX[city] = instance.getX()[last];
+            newY[city] = instance.getY()[last];
+        }
+        if (n - 1 <= EXACT_LIMIT) {
+            neighbors = null;
+            reach = null;
+            setCoordinates(newX, newY);
+            solveExactly();
+            return city != last ? last : -1;
+        }
+
+        detachNeighbors(city, n);
+        if (city != last) {
+            System.arraycopy(neighbors, last * NEIGHBORS, neighbors, city * NEIGHBORS, NEIGHBORS);
+            reach[city] = reach[last];
+            for (int i = 0; i < (n - 1) * NEIGHBORS; i++) {
+                if (neighbors[i] == last) {
+                    neighbors[i] = city;
+                }
+            }
+            for (int i = 0; i < around.length; i++) {
+                if (around[i] == last) {
+                    around[i] = city;
+                }
+            }
+        }
+        setCoordinates(newX, newY);
+        improve(below(around, n - 1));
+        return city != last ? last : -1;
+    }
+
+    /**
+     * Moves a city to a new position and repairs the tour at both its old and its new place.
+     *
+     * @param city The city to move.
+     * @param x The new x coordinate.
+     * @param y The new y coordinate.
+     */
+    public void move(int city, double x, double y) {
+        int n = tour.length;
+        checkCity(city);
+        double[] newX = instance.getX().clone();
+        double[] newY = instance.getY().clone();
+        newX[city] = x;
+        newY[city] = y;
+        if (neighbors == null) {
+            setCoordinates(newX, newY);
+            if (n <= EXACT_LIMIT) {
+                solveExactly();
+            }
+            return;
+        }
+        int[] oldAround = affected(city);
+        int[] shorter = new int[n - 1];
+        int count = 0;
+        for (int c : tour) {
+            if (c != city) {
+                shorter[count++] = c;
+            }
+        }
+        detachNeighbors(city, n);
+        setCoordinates(newX, newY);
+        attachNeighbors(city);
+        tour = insertCheapest(shorter, city);
+        int[] newAround = affected(city);
+        int[] around = Arrays.copyOf(oldAround, oldAround.length + newAround.length);
+        System.arraycopy(newAround, 0, around, oldAround.length, newAround.length);
+        improve(around);
+    }
+
+    private void checkCity(int city) {
+        if (city < 0 || city >= tour.length) {
+            throw new IllegalArgumentException("No city " + city + " among " + tour.length);
+        }
+    }
+
+    /**
+     * Replaces the instance and the distances after a change of the cities.
+     */
+    private void setCoordinates(double[] x, double[] y) {
+        instance = new TspInstance(name, x, y, metric);
+        distances = new InstanceDistances(instance);
+    }
+
+    /**
+     * Solves the current cities exactly, keeping the tour if the solver finds none.
+     */
+    private void solveExactly() {
+        int n = tour.length;
+        if (n < 4) {
+            return;
+        }
+        double[][] matrix = dynaTSP.calculateDistances(distances);
+        TourResult exact = new dynaTSP(matrix, new CompactTable(n)).solve(1);
+        if (exact != null) {
+            tour = exact.getTour();
+        }
+    }
+
+    /**
+     * Puts a city into the tour where it adds the least length, trying the edges at each of its
+     * nearest neighbours.
+     *
+     * @param order The tour without the city.
+     * @param city The city to insert.
+     * @return The tour with the city.
+     */
+    private int[] insertCheapest(int[] order, int city) {
+        int m = order.length;
+        int[] position = new int[m + 1];
+        for (int i = 0; i < m; i++) {
+            position[order[i]] = i;
+        }
+        int bestAfter = 0;
+        double bestCost = Double.POSITIVE_INFINITY;
+        for (int entry = city * NEIGHBORS; entry < (city + 1) * NEIGHBORS; entry++) {
+            int i = position[neighbors[entry]];
+            // The edges before and after the neighbour.
+            for (int after = i - 1; after <= i; after++) {
+                int a = order[(after + m) % m];
+                int b = order[(after + 1) % m];
+                double cost = distances.distance(a, city) + distances.distance(city, b) - distances.distance(a, b);
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    bestAfter = (after + m) % m;
+                }
+            }
+        }
+        int[] result = new int[m + 1];
+        System.arraycopy(order, 0, result, 0, bestAfter + 1);
+        result[bestAfter + 1] = city;
+        System.arraycopy(order, bestAfter + 1, result, bestAfter + 2, m - bestAfter - 1);
+        return result;
+    }
+
+    /**
+     * Lists the cities a change at one city can affect: the city, its neighbours in the tour and
+     * its nearest neighbours.
+     */
+    private int[] affected(int city) {
+        int n = tour.length;
+        int[] around = new int[NEIGHBORS + 3];
+        int i = 0;
+        while (tour[i] != city) {
+            i++;
+        }
+        around[0] = city;
+        around[1] = tour[(i + n - 1) % n];
+        around[2] = tour[(i + 1) % n];
+        System.arraycopy(neighbors, city * NEIGHBORS, around, 3, NEIGHBORS);
+        return around;
+    }
+
+    /**
+     * Drops the cities numbered at or above a limit from a list of cities.
+     */
+    private static int[] below(int[] cities, int limit) {
+        int count = 0;
+        int[] result = new int[cities.length];
+        for (int c : cities) {
+            if (c < limit) {
+                result[count++] = c;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Finds the nearest neighbours of a city by comparing it with every other city, and adds it to
+     * the lists of the cities it is nearer to than their farthest listed neighbour.
+     *
+     * @param city The new or moved city, not in any list.
+     */
+    private void attachNeighbors(int city) {
+        int n = tour.length + (city == tour.length ? 1 : 0);
+        double[] x = instance.getX();
+        double[] y = instance.getY();
+        double[] found = new double[NEIGHBORS];
+        int count = 0;
+        int offset = city * NEIGHBORS;
+        for (int other = 0; other < n; other++) {
+            if (other == city) {
+                continue;
+            }
+            double dx = x[city] - x[other];
+            double dy = y[city] - y[other];
+            double distance = dx * dx + dy * dy;
+            if (count < NEIGHBORS || distance < found[NEIGHBORS - 1]) {
+                // Insertion into the sorted list of the closest cities so far.
+                int slot = count < NEIGHBORS ? count++ : NEIGHBORS - 1;
+                while (slot > 0 && found[slot - 1] > distance) {
+                    found[slot] = found[slot - 1];
+                    neighbors[offset + slot] = neighbors[offset + slot - 1];
+                    slot--;
+                }
+                found[slot] = distance;
+                neighbors[offset + slot] = other;
+            }
+            if (distance < reach[other]) {
+                int otherOffset = other * NEIGHBORS;
+                int slot = NEIGHBORS - 1;
+                while (slot > 0 && squared(other, neighbors[otherOffset + slot - 1]) > distance) {
+                    neighbors[otherOffset + slot] = neighbors[otherOffset + slot - 1];
+                    slot--;
+                }
+                neighbors[otherOffset + slot] = city;
+                reach[other] = squared(other, neighbors[otherOffset + NEIGHBORS - 1]);
+            }
+        }
+        reach[city] = found[NEIGHBORS - 1];
+    }
+
+    /**
+     * Removes a city from every neighbour list. Each list that loses it is refilled with the
+     * nearest city among the neighbours of its remaining neighbours.
+     *
+     * @param city The removed or moved city.
+     * @param n The number of cities whose lists are checked.
+     */
+    private void detachNeighbors(int city, int n) {
+        for (int other = 0; other < n; other++) {
+            if (other == city) {
+                continue;
+            }
+            int offset = other * NEIGHBORS;
+            if (squared(other, city) > reach[other]) {
+                continue;
+            }
+            int slot = -1;
+            for (int i = 0; i < NEIGHBORS; i++) {
+                if (neighbors[offset + i] == city) {
+                    slot = i;
+                    break;
+                }
+            }
+            if (slot < 0) {
+                continue;
+            }
+            System.arraycopy(neighbors, offset + slot + 1, neighbors, offset + slot, NEIGHBORS - 1 - slot);
+            int best = -1;
+            double bestDistance = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < NEIGHBORS - 1; i++) {
+                int neighbor = neighbors[offset + i];
+                for (int j = neighbor * NEIGHBORS; j < (neighbor + 1) * NEIGHBORS; j++) {
+                    int candidate = neighbors[j];
+                    if (candidate == other || candidate == city || listed(offset, candidate)) {
+                        continue;
+                    }
+                    double distance = squared(other, candidate);
+                    if (distance < bestDistance) {
+                        bestDistance = distance;
+                        best = candidate;
+                    }
+                }
+            }
+            if (best < 0) {
+                // Nothing new two steps away, which only happens in tiny clusters.
+                for (int candidate = 0; candidate < n; candidate++) {
+                    if (candidate != other && candidate != city && !listed(offset, candidate)) {
+                        double distance = squared(other, candidate);
+                        if (distance < bestDistance) {
+                            bestDistance = distance;
+                            best = candidate;
+                        }
+                    }
+                }
+            }
+            // Keep the list sorted, since the lists are only as exact as their neighbours' lists.
+            int place = NEIGHBORS - 1;
+            while (place > 0 && squared(other, neighbors[offset + place - 1]) > bestDistance) {
+                neighbors[offset + place] = neighbors[offset + place - 1];
+                place--;
+            }
+            neighbors[offset + place] = best;
+            reach[other] = squared(other, neighbors[offset + NEIGHBORS - 1]);
+        }
+    }
+
+    /**
+     * Finds the farthest listed neighbour of every city after the lists were built.
+     */
+    private void computeReach() {
+        int n = tour.length;
+        reach = new double[n];
+        for (int city = 0; city < n; city++) {
+            reach[city] = squared(city, neighbors[city * NEIGHBORS + NEIGHBORS - 1]);
+        }
+    }
+
+    /**
+     * Gets the squared straight-line distance between two cities, which orders neighbours the same
+     * way as {@link SpatialGrid} does.
+     */
+    private double squared(int a, int b) {
+        double[] x = instance.getX();
+        double[] y = instance.getY();
+        double dx = x[a] - x[b];
+        double dy = y[a] - y[b];
+        return dx * dx + dy * dy;
+    }
+
+    private boolean listed(int offset, int city) {
+        for (int i = 0; i < NEIGHBORS - 1; i++) {
+            if (neighbors[offset + i] == city) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Runs a local search on the tour that starts from the given cities only.
+     */
+    private void improve(int[] start) {
+        // Only a few moves are made, so the reversals of an array tour cost less than building a
+        // two-level list.
+        Tour search = new ArrayTour(tour);
+        new LocalSearch(distances, neighbors, NEIGHBORS).optimize(search, start, REPAIR_ITERATIONS,
+                REPAIR_PLATEAU, new AtomicBoolean(), Long.MAX_VALUE, null);
+        tour = search.toArray();
+    }
+
+    /**
+     * Measures distances with the instance's metric on every call. The instance changes with
+     * every update, so nothing is worth caching.
+     */
+    private static final class InstanceDistances implements DistanceOracle {
+
+        private final TspInstance instance;
+
+        InstanceDistances(TspInstance instance) {
+            this.instance = instance;
+        }
+
+        @Override
+        public int size() {
+            return instance.size();
+        }
+
+        @Override
+        public double distance(int i, int j) {
+            return instance.distance(i, j);
+        }
+
+        @Override
+        public long memoryBytes() {
+            return 0;
+        }
+    }
+}
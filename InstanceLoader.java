@@ -0,0 +1,364 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+
+/**
+ * Reads problem instances into a {@link TspInstance}.
+ *
+ * Three formats are recognised from the start of the file:
+ * the plain format (the number of cities, then one "x y" pair per city),
+ * TSPLIB .tsp files with a NODE_COORD_SECTION and EUC_2D, CEIL_2D, ATT or GEO edge weights,
+ * and the binary cache this class writes. Text files are memory-mapped and numbers are parsed
+ * straight from the bytes into primitive arrays, without creating a String per token.
+ *
+ * The cache is a file next to the input, named after it with {@value #CACHE_SUFFIX} appended.
+ * It stores the size and modification time of the file it was made from and is ignored once
+ * those no longer match.
+ */
+final class InstanceLoader {
+
+    static final String CACHE_SUFFIX = ".tspb";
+    private static final int MAGIC = 0x54535042;
+    private static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private InstanceLoader() {
+    }
+
+    /**
+     * Reads an instance in any of the supported formats.
+     *
+     * @param path The file to read.
+     * @return The instance.
+     * @throws IOException If the file cannot be read or is not a valid instance.
+     */
+    static TspInstance load(Path path) throws IOException {
+        MappedByteBuffer buffer = map(path);
+        if (buffer.remaining() >= 4 && buffer.getInt(0) == MAGIC) {
+            return readBinary(buffer, path);
+        }
+        ByteScanner scanner = new ByteScanner(buffer, path);
+        scanner.skipWhitespace();
+        if (scanner.atLetter()) {
+            return readTsplib(scanner, path);
+        }
+        return readPlain(scanner, path);
+    }
+
+    /**
+     * Reads an instance through its binary cache, writing the cache if it is missing or stale.
+     * A cache that cannot be written is reported on standard error and otherwise ignored.
+     *
+     * @param path The file to read.
+     * @return The instance.
+     * @throws IOException If the file cannot be read or is not a valid instance.
+     */
+    static TspInstance loadCached(Path path) throws IOException {
+        Path cache = path.resolveSibling(path.getFileName() + CACHE_SUFFIX);
+        long size = Files.size(path);
+        long modified = Files.getLastModifiedTime(path).toMillis();
+        if (Files.exists(cache)) {
+            MappedByteBuffer buffer = map(cache);
+            if (buffer.remaining() >= 24 && buffer.getInt(0) == MAGIC && buffer.getInt(4) == VERSION
+                    && buffer.getLong(8) == size && buffer.getLong(16) == modified) {
+                return readBinary(buffer, cache);
+            }
+        }
+        TspInstance instance = load(path);
+        try {
+            writeBinary(instance, cache, size, modified);
+        } catch (IOException e) {
+            System.err.println("Could not write instance cache " + cache + ": " + e.getMessage());
+        }
+        return instance;
+    }
+
+    /**
+     * Writes an instance in the binary format: magic, version, source size and modification
+     * time, metric, name, city count, then all x and all y coordinates as doubles. The file is
+     * written under a temporary name and moved into place, so it is either complete or absent.
+     *
+     * @param instance The instance.
+     * @param target The file to write.
+     * @param sourceSize The size of the file the instance was read from, or 0.
+     * @param sourceModified The modification time of that file in milliseconds, or 0.
+     * @throws IOException If the file cannot be written.
+     */
+    static void writeBinary(TspInstance instance, Path target, long sourceSize, long sourceModified)
+            throws IOException {
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        byte[] name = instance.getName().getBytes(StandardCharsets.UTF_8);
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temporary), BUFFER_SIZE))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(sourceSize);
+            out.writeLong(sourceModified);
+            out.writeInt(instance.getMetric().ordinal());
+            out.writeInt(name.length);
+            out.write(name);
+            out.writeInt(instance.size());
+            for (double value : instance.getX()) {
+                out.writeDouble(value);
+            }
+            for (double value : instance.getY()) {
+                out.writeDouble(value);
+            }
+        }
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static MappedByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(path + " is larger than 2 GB");
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private static TspInstance readBinary(MappedByteBuffer buffer, Path path) throws IOException {
+        try {
+            buffer.position(4);
+            if (buffer.getInt() != VERSION) {
+                throw new IOException(path + " has an unsupported cache version");
+            }
+            buffer.position(24);
+            TspInstance.Metric metric = TspInstance.Metric.values()[buffer.getInt()];
+            byte[] name = new byte[buffer.getInt()];
+            buffer.get(name);
+            int count = buffer.getInt();
+            double[] x = new double[count];
+            double[] y = new double[count];
+            buffer.asDoubleBuffer().get(x);
+            buffer.position(buffer.position() + 8 * count);
+            buffer.asDoubleBuffer().get(y);
+            return new TspInstance(new String(name, StandardCharsets.UTF_8), x, y, metric);
+        } catch (RuntimeException e) {
+            throw new IOException(path + " is not a valid instance cache", e);
+        }
+    }
+
+    private static TspInstance readPlain(ByteScanner scanner, Path path) throws IOException {
+        double header = scanner.nextNumber();
+        int count = (int) header;
+        if (count <= 0 || count != header) {
+            throw new IOException(path + " has an invalid number of cities: " + header);
+        }
+        double[] x = new double[count];
+        double[] y = new double[count];
+        for (int i = 0; i < count; i++) {
+            if (!scanner.hasNumber()) {
+                throw new IOException(path + " lists " + i + " of " + count + " cities");
+            }
+            x[i] = scanner.nextNumber();
+            y[i] = scanner.nextNumber();
+        }
+        return new TspInstance(path.getFileName().toString(), x, y, TspInstance.Metric.EUCLIDEAN);
+    }
+
+    private static TspInstance readTsplib(ByteScanner scanner, Path path) throws IOException {
+        String name = path.getFileName().toString();
+        int count = -1;
+        TspInstance.Metric metric = null;
+        while (true) {
+            String line = scanner.nextLine();
+            if (line == null) {
+                throw new IOException(path + " has no NODE_COORD_SECTION");
+            }
+            int colon = line.indexOf(':');
+            String key = (colon >= 0 ? line.substring(0, colon) : line).trim().toUpperCase(Locale.ROOT);
+            String value = colon >= 0 ? line.substring(colon + 1).trim() : "";
+            if (key.equals("NODE_COORD_SECTION")) {
+                break;
+            } else if (key.equals("NAME")) {
+                name = value;
+            } else if (key.equals("TYPE") && !value.toUpperCase(Locale.ROOT).startsWith("TSP")) {
+                throw new IOException(path + " has unsupported type " + value);
+            } else if (key.equals("DIMENSION")) {
+                try {
+                    count = Integer.parseInt(value);
+                } catch (NumberFormatException e) {
+                    count = 0;
+                }
+                if (count <= 0) {
+                    throw new IOException(path + " has an invalid DIMENSION: " + value);
+                }
+            } else if (key.equals("EDGE_WEIGHT_TYPE")) {
+                try {
+                    metric = TspInstance.Metric.valueOf(value.toUpperCase(Locale.ROOT));
+                } catch (IllegalArgumentException e) {
+                    throw new IOException(path + " has unsupported edge weight type " + value);
+                }
+                if (metric == TspInstance.Metric.EUCLIDEAN) {
+                    throw new IOException(path + " has unsupported edge weight type " + value);
+                }
+            } else if (key.endsWith("_SECTION")) {
+                throw new IOException(path + " has unsupported section " + key);
+            }
+        }
+        if (count < 0 || metric == null) {
+            throw new IOException(path + " needs DIMENSION and EDGE_WEIGHT_TYPE before NODE_COORD_SECTION");
+        }
+
+        double[] x = new double[count];
+        double[] y = new double[count];
+        for (int i = 0; i < count; i++) {
+            if (!scanner.hasNumber()) {
+                throw new IOException(path + " lists " + i + " of " + count + " cities");
+            }
+            scanner.nextNumber(); // Node numbers run from 1 to DIMENSION in order.
+            x[i] = scanner.nextNumber();
+            y[i] = scanner.nextNumber();
+        }
+        return new TspInstance(name, x, y, metric);
+    }
+
+    /**
+     * Reads numbers and lines from a buffer of ASCII text.
+     */
+    private static final class ByteScanner {
+        private final MappedByteBuffer buffer;
+        private final Path path;
+        private final int limit;
+        private int position;
+
+        ByteScanner(MappedByteBuffer buffer, Path path) {
+            this.buffer = buffer;
+            this.path = path;
+            this.limit = buffer.limit();
+        }
+
+        void skipWhitespace() {
+            while (position < limit && buffer.get(position) <= ' ') {
+                position++;
+            }
+        }
+
+        boolean atLetter() {
+            if (position >= limit) {
+                return false;
+            }
+            byte b = buffer.get(position);
+            return (b >= 'A' && b <= 'Z') || (b >= 'a' && b <= 'z');
+        }
+
+        boolean hasNumber() {
+            skipWhitespace();
+            if (position >= limit) {
+                return false;
+            }
+            byte b = buffer.get(position);
+            return (b >= '0' && b <= '9') || b == '-' || b == '+' || b == '.';
+        }
+
+        /**
+         * Reads the rest of the current line, skipping blank lines first.
+         *
+         * @return The line, or null at the end of the file.
+         */
+        String nextLine() {
+            skipWhitespace();
+            if (position >= limit) {
+                return null;
+            }
+            int start = position;
+            while (position < limit && buffer.get(position) != '\n' && buffer.get(position) != '\r') {
+                position++;
+            }
+            byte[] bytes = new byte[position - start];
+            buffer.get(start, bytes);
+            return new String(bytes, StandardCharsets.US_ASCII);
+        }
+
+        /**
+         * Parses the next number, such as 12, -3.5 or 1.25e+03.
+         *
+         * Up to 18 significant digits are gathered into a long and scaled by a power of ten.
+         * When the digits and the power are both exact doubles the single multiplication or
+         * division rounds correctly; other numbers fall back to Double.parseDouble.
+         *
+         * @return The number.
+         * @throws IOException If there is no number at this point of the file.
+         */
+        double nextNumber() throws IOException {
+            skipWhitespace();
+            int start = position;
+            boolean negative = false;
+            if (position < limit && (buffer.get(position) == '-' || buffer.get(position) == '+')) {
+                negative = buffer.get(position) == '-';
+                position++;
+            }
+            long mantissa = 0;
+            int digits = 0;
+            int exponent = 0;
+            boolean exact = true;
+            boolean seenDigit = false;
+            boolean fraction = false;
+            while (position < limit) {
+                byte b = buffer.get(position);
+                if (b >= '0' && b <= '9') {
+                    seenDigit = true;
+                    if (digits < 18) {
+                        mantissa = mantissa * 10 + (b - '0');
+                        if (mantissa != 0) {
+                            digits++;
+                        }
+                        if (fraction) {
+                            exponent--;
+                        }
+                    } else {
+                        exact = false;
+                        if (!fraction) {
+                            exponent++;
+                        }
+                    }
+                } else if (b == '.' && !fraction) {
+                    fraction = true;
+                } else {
+                    break;
+                }
+                position++;
+            }
+            if (!seenDigit) {
+                throw new IOException(path + ": expected a number at byte " + start);
+            }
+            if (position < limit && (buffer.get(position) == 'e' || buffer.get(position) == 'E')) {
+                position++;
+                boolean negativeExponent = false;
+                if (position < limit && (buffer.get(position) == '-' || buffer.get(position) == '+')) {
+                    negativeExponent = buffer.get(position) == '-';
+                    position++;
+                }
+                int value = 0;
+                while (position < limit && buffer.get(position) >= '0' && buffer.get(position) <= '9') {
+                    value = Math.min(value * 10 + (buffer.get(position) - '0'), 100000);
+                    position++;
+                }
+                exponent += negativeExponent ? -value : value;
+            }
+
+            double result;
+            if (exact && mantissa < (1L << 53) && Math.abs(exponent) < POWERS_OF_TEN.length) {
+                result = exponent >= 0 ? mantissa * POWERS_OF_TEN[exponent] : mantissa / POWERS_OF_TEN[-exponent];
+            } else {
+                byte[] bytes = new byte[position - start];
+                buffer.get(start, bytes);
+                result = Math.abs(Double.parseDouble(new String(bytes, StandardCharsets.US_ASCII)));
+            }
+            return negative ? -result : result;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event spanning one layer of a layer by layer dynaTSP solve.
+ */
+@Name("tpssolver.Layer")
+@Label("DP Layer")
+@Category("TSP Solver")
+@Description("All subsets of one size solved by dynaTSP")
+class LayerEvent extends Event {
+
+    @Label("Subset Size")
+    int size;
+
+    @Label("Subsets")
+    long subsets;
+
+    @Label("States")
+    long states;
+
+    @Label("Layer Memory")
+    @DataAmount
+    long bytes;
+}
@@ -0,0 +1,76 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Computes distances when asked and keeps recently used edges in a fixed-size, direct-mapped cache.
+ * Distances are rounded to float precision whether or not they come from the cache, so results
+ * do not depend on what happens to be cached.
+ *
+ * An edge (i, j) with i &lt; j has the key i * n + j. The low bits of the key, mixed with a hash of
+ * the high bits, choose the slot; the high bits are kept as a tag next to the float in a single
+ * long, so a slot is read and written in one atomic step and threads can share the cache without
+ * locking. The planar metrics (EUCLIDEAN, EUC_2D, CEIL_2D and ATT) are cheaper to compute than a
+ * cache miss, so they bypass the cache; it pays off only for the trigonometric GEO metric.
+ */
+class LazyDistances implements DistanceOracle {
+
+    private static final int DEFAULT_CACHE_BITS = 20;
+    private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final TspInstance instance;
+    private final int cityCount;
+    private final int cacheBits;
+    private final long[] slots;
+
+    /**
+     * Creates an oracle with a cache of about a million edges.
+     *
+     * @param instance The cities.
+     */
+    LazyDistances(TspInstance instance) {
+        this(instance, DEFAULT_CACHE_BITS);
+    }
+
+    /**
+     * Creates an oracle.
+     *
+     * @param instance The cities.
+     * @param cacheBits The base 2 logarithm of the number of cached edges. It is raised if needed
+     *                  so that tags fit in 32 bits.
+     */
+    LazyDistances(TspInstance instance, int cacheBits) {
+        this.instance = instance;
+        cityCount = instance.size();
+        int keyBits = 64 - Long.numberOfLeadingZeros(Math.max(1, (long) cityCount * cityCount));
+        this.cacheBits = Math.max(cacheBits, keyBits - 31);
+        slots = instance.getMetric() == TspInstance.Metric.GEO ? new long[1 << this.cacheBits] : null;
+    }
+
+    @Override
+    public int size() {
+        return cityCount;
+    }
+
+    @Override
+    public double distance(int i, int j) {
+        if (slots == null) {
+            return (float) instance.distance(i, j);
+        }
+        long key = i < j ? (long) i * cityCount + j : (long) j * cityCount + i;
+        long high = key >>> cacheBits;
+        int slot = (int) ((key ^ ((high * 0x9E3779B97F4A7C15L) >>> (64 - cacheBits))) & ((1 << cacheBits) - 1));
+        long tag = high + 1;
+        long entry = (long) SLOTS.getOpaque(slots, slot);
+        if (entry >>> 32 == tag) {
+            return Float.intBitsToFloat((int) entry);
+        }
+        float distance = (float) instance.distance(i, j);
+        SLOTS.setOpaque(slots, slot, (tag << 32) | (Float.floatToRawIntBits(distance) & 0xFFFFFFFFL));
+        return distance;
+    }
+
+    @Override
+    public long memoryBytes() {
+        return slots == null ? 0 : 8L * slots.length;
+    }
+}
@@ -0,0 +1,320 @@
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Neighbour-list local search with 2-opt and Or-opt moves on a {@link Tour}.
+ *
+ * A 2-opt move replaces two edges by reversing the path between them. An Or-opt move takes a
+ * segment of one to three cities out of the tour and puts it back between two other cities,
+ * either way round; it is the 3-opt move that keeps the rest of the tour in place, done here as
+ * two or three reversals. Every move adds an edge from a city to one of its nearest neighbours and
+ * is scored by the change in length of the edges it touches.
+ *
+ * Cities wait in a queue; a city whose moves yield no improvement drops out (its "don't-look bit"
+ * is set) until a move changes one of its edges.
+ */
+class LocalSearch {
+
+    private static final double EPSILON = 1e-9;
+    private static final int MAX_SEGMENT = 3;
+
+    private final DistanceOracle distances;
+    private final int[] neighbors;
+    private final int neighborCount;
+    private final int[] changed = new int[6];
+    private int changedCount;
+    private double lastDelta;
+    private long evaluations;
+    private long accepted;
+    private boolean plateauReached;
+
+    /**
+     * Creates a local search. Not safe to share between threads; create one per climb.
+     *
+     * @param distances The distance between every pair of cities.
+     * @param neighbors The flat neighbour lists, neighborCount entries per city, nearest first.
+     * @param neighborCount The number of neighbours per city.
+     */
+    LocalSearch(DistanceOracle distances, int[] neighbors, int neighborCount) {
+        this.distances = distances;
+        this.neighbors = neighbors;
+        this.neighborCount = neighborCount;
+    }
+
+    /**
+     * Improves a tour until no queued city yields an improving move or a limit is hit.
+     *
+     * @param tour The tour, changed in place.
+     * @param start The cities to queue first, usually all of them.
+     * @param maxIterations The maximum number of cities to take from the queue.
+     * @param plateauLimit Stop after this many cities in a row yield no improvement.
+     * @param stop Set when the search should stop early.
+     * @param deadline The System.nanoTime() value to stop at, or Long.MAX_VALUE.
+     * @param progress Receives the current tour length every 256 iterations, or null.
+     * @return The number of cities taken from the queue.
+     */
+    int optimize(Tour tour, int[] start, int maxIterations, int plateauLimit, AtomicBoolean stop, long deadline,
+                 ProgressTracker progress) {
+        int n = tour.size();
+        int[] queue = new int[n];
+        boolean[] queued = new boolean[n];
+        int head = 0;
+        int queuedCount = 0;
+        for (int city : start) {
+            if (!queued[city]) {
+                queue[queuedCount++] = city;
+                queued[city] = true;
+            }
+        }
+
+        int plateauSize = 0;
+        int iteration = 0;
+        evaluations = 0;
+        accepted = 0;
+        plateauReached = false;
+        double length = progress != null ? length(tour) : 0;
+        while (queuedCount > 0 && iteration < maxIterations && !climbTSP.shouldStop(stop, deadline, iteration)) {
+            if (progress != null && iteration > 0 && (iteration & 255) == 0) {
+                progress.update(256, length);
+            }
+            int city = queue[head];
+            head = (head + 1) % n;
+            queuedCount--;
+            queued[city] = false;
+
+            if (twoOpt(tour, city) || orOpt(tour, city)) {
+                length += lastDelta;
+                accepted++;
+                plateauSize = 0;
+                for (int i = 0; i < changedCount; i++) {
+                    int endpoint = changed[i];
+                    if (!queued[endpoint]) {
+                        queue[(head + queuedCount) % n] = endpoint;
+                        queued[endpoint] = true;
+                        queuedCount++;
+                    }
+                }
+            } else if (++plateauSize >= plateauLimit) {
+                plateauReached = true;
+                break;
+            }
+            iteration++;
+        }
+        return iteration;
+    }
+
+    /**
+     * @return The number of moves scored by the last {@link #optimize} call.
+     */
+    long getEvaluations() {
+        return evaluations;
+    }
+
+    /**
+     * @return The number of moves applied by the last {@link #optimize} call.
+     */
+    long getAccepted() {
+        return accepted;
+    }
+
+    /**
+     * @return true if the last {@link #optimize} call stopped at the plateau limit; false otherwise.
+     */
+    boolean isPlateauReached() {
+        return plateauReached;
+    }
+
+    /**
+     * Looks for an improving 2-opt move that connects a city to one of its neighbours, and applies
+     * the first one found.
+     *
+     * Removing edges (a, b) and (c, d) and adding (a, c) and (b, d) can only improve the tour if
+     * (a, c) is shorter than (a, b), so the scan over a's neighbours, which are sorted by distance,
+     * stops at the first neighbour that is not.
+     *
+     * @param tour The tour.
+     * @param a The city.
+     * @return true if a move was applied; false otherwise.
+     */
+    private boolean twoOpt(Tour tour, int a) {
+        for (int direction = 0; direction < 2; direction++) {
+            boolean forward = direction == 0;
+            int b = forward ? tour.next(a) : tour.prev(a);
+            double removedAB = distance(a, b);
+            for (int i = a * neighborCount; i < (a + 1) * neighborCount; i++) {
+                int c = neighbors[i];
+                double addedAC = distance(a, c);
+                if (addedAC >= removedAB - EPSILON) {
+                    break;
+                }
+                int d = forward ? tour.next(c) : tour.prev(c);
+                if (c == b || d == a) {
+                    continue;
+                }
+                double delta = addedAC + distance(b, d) - removedAB - distance(c, d);
+                evaluations++;
+                if (delta < -EPSILON) {
+                    if (forward) {
+                        // a b ... c d becomes a c ... b d
+                        tour.reverse(b, c);
+                    } else {
+                        // d c ... b a becomes d b ... c a
+                        tour.reverse(c, b);
+                    }
+                    lastDelta = delta;
+                    recordChanged(a, b, c, d);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Looks for an improving Or-opt move of a segment that starts or ends at a city, and applies
+     * the first one found.
+     *
+     * Taking the segment out saves removeGain; it goes back next to a neighbour of one of its
+     * ends, and since that adds at least the edge to the neighbour, the scan over the sorted
+     * neighbours stops at the first one that is farther away than removeGain.
+     *
+     * @param tour The tour.
+     * @param city The city.
+     * @return true if a move was applied; false otherwise.
+     */
+    private boolean orOpt(Tour tour, int city) {
+        int n = tour.size();
+        for (int length = 1; length <= MAX_SEGMENT && length + 3 <= n; length++) {
+            for (int direction = 0; direction < (length == 1 ? 1 : 2); direction++) {
+                int first = city;
+                int last = city;
+                for (int i = 1; i < length; i++) {
+                    if (direction == 0) {
+                        last = tour.next(last);
+                    } else {
+                        first = tour.prev(first);
+                    }
+                }
+                if (tryMoveSegment(tour, first, last)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tries to move the segment running forwards from first to last next to a neighbour of one of
+     * its ends.
+     *
+     * @param tour The tour.
+     * @param first The first city of the segment.
+     * @param last The last city of the segment.
+     * @return true if a move was applied; false otherwise.
+     */
+    private boolean tryMoveSegment(Tour tour, int first, int last) {
+        int before = tour.prev(first);
+        int after = tour.next(last);
+        double removeGain = distance(before, first) + distance(last, after) - distance(before, after);
+        if (removeGain <= EPSILON) {
+            return false;
+        }
+        for (int end = 0; end < 2; end++) {
+            int e = end == 0 ? first : last;
+            int other = end == 0 ? last : first;
+            for (int i = e * neighborCount; i < (e + 1) * neighborCount; i++) {
+                int c = neighbors[i];
+                double addedEC = distance(e, c);
+                if (addedEC >= removeGain - EPSILON) {
+                    break;
+                }
+                if (tour.between(first, c, last)) {
+                    continue;
+                }
+                // Put e next to c, between c and its successor or between its predecessor and c.
+                int succ = tour.next(c);
+                if (succ != first) {
+                    double delta = addedEC + distance(other, succ) - distance(c, succ) - removeGain;
+                    evaluations++;
+                    if (delta < -EPSILON) {
+                        // c e ... other succ: the segment keeps its direction if e is its first city.
+                        moveSegment(tour, first, last, c, succ, e == first);
+                        lastDelta = delta;
+                        recordChanged(before, after, first, last, c, succ);
+                        return true;
+                    }
+                }
+                int pred = tour.prev(c);
+                if (pred != last) {
+                    double delta = addedEC + distance(other, pred) - distance(pred, c) - removeGain;
+                    evaluations++;
+                    if (delta < -EPSILON) {
+                        // pred other ... e c: the segment keeps its direction if e is its last city.
+                        moveSegment(tour, first, last, pred, c, e == last);
+                        lastDelta = delta;
+                        recordChanged(before, after, first, last, pred, c);
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Moves the segment running forwards from first to last between two adjacent cities u and
+     * v = next(u) outside it.
+     *
+     * @param tour The tour.
+     * @param first The first city of the segment.
+     * @param last The last city of the segment.
+     * @param u The city to put before the segment.
+     * @param v The city to put after the segment.
+     * @param keepDirection true for u first ... last v; false for u last ... first v.
+     */
+    private static void moveSegment(Tour tour, int first, int last, int u, int v, boolean keepDirection) {
+        int after = tour.next(last);
+        // before first ... last after ... u v becomes before u ... after last ... first v
+        tour.reverse(first, u);
+        // then before after ... u last ... first v
+        tour.reverse(u, after);
+        if (keepDirection) {
+            tour.reverse(last, first);
+        }
+    }
+
+    /**
+     * Measures the length of a tour.
+     *
+     * @param tour The tour.
+     * @return The length of the closed tour.
+     */
+    private double length(Tour tour) {
+        double length = 0;
+        int city = 0;
+        for (int i = 0; i < tour.size(); i++) {
+            int next = tour.next(city);
+            length += distance(city, next);
+            city = next;
+        }
+        return length;
+    }
+
+    private void recordChanged(int a, int b, int c, int d) {
+        changed[0] = a;
+        changed[1] = b;
+        changed[2] = c;
+        changed[3] = d;
+        changedCount = 4;
+    }
+
+    private void recordChanged(int a, int b, int c, int d, int e, int f) {
+        recordChanged(a, b, c, d);
+        changed[4] = e;
+        changed[5] = f;
+        changedCount = 6;
+    }
+
+    private double distance(int city1, int city2) {
+        return distances.distance(city1, city2);
+    }
+}
@@ -0,0 +1,248 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Table kept in memory-mapped files in a scratch directory instead of the heap, so the
+ * operating system's page cache holds the working set.
+ *
+ * Entries are grouped by layer (the number of cities in the subset besides city 0). Within a
+ * layer a subset is found by its rank in increasing numeric order, so a layer is one contiguous
+ * region that the solver fills from front to back. Costs get one file per layer: a layer is only
+ * read while the next one is solved, after which its file is deleted. Predecessors of every layer
+ * are needed to rebuild the tour and stay in a single file until the table is closed.
+ *
+ * Files are created sparse and zero-filled, so costs are stored XORed with the bits of
+ * BIG_NUMBER and predecessors are stored plus one. A zero then reads back as an unset entry
+ * and the table never has to be filled.
+ */
+class MappedTable implements TspTable {
+
+    private static final int CHUNK_SHIFT = 30;
+    private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+    private static final long UNSET_BITS = Double.doubleToRawLongBits(dynaTSP.BIG_NUMBER);
+
+    private final int cityCount;
+    private final int rowLength;
+    private final Path scratchDirectory;
+    private final long[][] binomials;
+    private final long[] layerOffsets;
+    private Path directory;
+    private MappedByteBuffer[][] costLayers;
+    private MappedByteBuffer[] predecessors;
+
+    /**
+     * Prepares a mapped table. No files are created until the table is reset.
+     *
+     * @param cityCount The number of cities.
+     * @param scratchDirectory The directory the table files are created in.
+     */
+    MappedTable(int cityCount, Path scratchDirectory) {
+        this.cityCount = cityCount;
+        this.rowLength = cityCount - 1;
+        this.scratchDirectory = scratchDirectory;
+        binomials = binomialTable(cityCount);
+        layerOffsets = new long[cityCount + 1];
+        for (int layer = 0; layer < cityCount; layer++) {
+            layerOffsets[layer + 1] = layerOffsets[layer] + layerCells(layer);
+        }
+    }
+
+    /**
+     * Calculates the most disk space a mapped table occupies at any point of the solve:
+     * all predecessors plus the costs of two adjacent layers.
+     *
+     * @param cityCount The number of cities.
+     * @return The size in bytes.
+     */
+    static long requiredBytes(int cityCount) {
+        long[][] binomials = binomialTable(cityCount);
+        long largestPair = 0;
+        for (int layer = 1; layer < cityCount; layer++) {
+            long pair = binomials[cityCount - 1][layer] + binomials[cityCount - 1][layer - 1];
+            largestPair = Math.max(largestPair, pair);
+        }
+        return CompactTable.cellCount(cityCount) * Byte.BYTES
+                + largestPair * (cityCount - 1) * Double.BYTES;
+    }
+
+    /**
+     * Builds Pascal's triangle up to the given number of cities.
+     *
+     * @param cityCount The number of cities.
+     * @return A table where [n][k] holds n choose k.
+     */
+    private static long[][] binomialTable(int cityCount) {
+        long[][] binomials = new long[cityCount + 1][cityCount + 1];
+        for (int n = 0; n <= cityCount; n++) {
+            binomials[n][0] = 1;
+            for (int k = 1; k <= n; k++) {
+                binomials[n][k] = binomials[n - 1][k - 1] + binomials[n - 1][k];
+            }
+        }
+        return binomials;
+    }
+
+    /**
+     * Counts the entries of a layer.
+     *
+     * @param layer The number of cities besides city 0 in the layer's subsets.
+     * @return The number of (city, subset) entries in the layer.
+     */
+    private long layerCells(int layer) {
+        return binomials[rowLength][layer] * rowLength;
+    }
+
+    /**
+     * Ranks a subset among the subsets of its layer in increasing numeric order,
+     * using the combinatorial number system.
+     *
+     * @param subset The subset, which must contain city 0.
+     * @return The position of the subset in its layer.
+     */
+    private long rank(int subset) {
+        int others = subset >>> 1;
+        long rank = 0;
+        int count = 1;
+        while (others != 0) {
+            rank += binomials[Integer.numberOfTrailingZeros(others)][count++];
+            others &= others - 1;
+        }
+        return rank;
+    }
+
+    /**
+     * Finds the position of an entry within its layer.
+     *
+     * @param city The city, which must not be city 0.
+     * @param subset The subset, which must contain city 0.
+     * @return The index of the entry in its layer.
+     */
+    private long index(int city, int subset) {
+        return rank(subset) * rowLength + city - 1;
+    }
+
+    /**
+     * Creates a file of the given size in the table directory and maps it in chunks.
+     *
+     * @param name The file name.
+     * @param bytes The size of the file.
+     * @return The mapped chunks of the file.
+     */
+    private MappedByteBuffer[] map(String name, long bytes) {
+        try (RandomAccessFile file = new RandomAccessFile(directory.resolve(name).toFile(), "rw")) {
+            file.setLength(bytes);
+            FileChannel channel = file.getChannel();
+            MappedByteBuffer[] chunks = new MappedByteBuffer[(int) ((bytes + CHUNK_MASK) >>> CHUNK_SHIFT)];
+            for (int i = 0; i < chunks.length; i++) {
+                long start = (long) i << CHUNK_SHIFT;
+                chunks[i] = channel.map(FileChannel.MapMode.READ_WRITE, start, Math.min(CHUNK_MASK + 1, bytes - start));
+                chunks[i].order(ByteOrder.nativeOrder());
+            }
+            return chunks;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not map " + name, e);
+        }
+    }
+
+    /**
+     * Deletes a file from the table directory. Pages still mapped are released by the
+     * operating system once the buffers are garbage collected.
+     *
+     * @param name The file name.
+     */
+    private void delete(String name) {
+        try {
+            Files.deleteIfExists(directory.resolve(name));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not delete " + name, e);
+        }
+    }
+
+    @Override
+    public void reset() {
+        close();
+        try {
+            directory = Files.createTempDirectory(scratchDirectory, "dynaTSP");
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create a table directory in " + scratchDirectory, e);
+        }
+        costLayers = new MappedByteBuffer[cityCount][];
+        predecessors = map("predecessors.bin", layerOffsets[cityCount]);
+    }
+
+    @Override
+    public boolean requiresLayerOrder() {
+        return true;
+    }
+
+    @Override
+    public void startLayer(int size) {
+        int layer = size - 1;
+        costLayers[layer] = map("costs-" + layer + ".bin", layerCells(layer) * Double.BYTES);
+    }
+
+    @Override
+    public void finishLayer(int size) {
+        int layer = size - 2;
+        if (layer >= 1) {
+            costLayers[layer] = null;
+            delete("costs-" + layer + ".bin");
+        }
+    }
+
+    @Override
+    public double getCost(int city, int subset) {
+        if (city == 0) {
+            return subset == 1 ? 0 : dynaTSP.BIG_NUMBER;
+        }
+        long offset = index(city, subset) * Double.BYTES;
+        MappedByteBuffer[] layer = costLayers[Integer.bitCount(subset) - 1];
+        long bits = layer[(int) (offset >>> CHUNK_SHIFT)].getLong((int) (offset & CHUNK_MASK));
+        return Double.longBitsToDouble(bits ^ UNSET_BITS);
+    }
+
+    @Override
+    public int getPredecessor(int city, int subset) {
+        if (city == 0) {
+            return -1;
+        }
+        long offset = layerOffsets[Integer.bitCount(subset) - 1] + index(city, subset);
+        return predecessors[(int) (offset >>> CHUNK_SHIFT)].get((int) (offset & CHUNK_MASK)) - 1;
+    }
+
+    @Override
+    public void update(int city, int subset, double cost, int predecessor) {
+        long index = index(city, subset);
+        int layer = Integer.bitCount(subset) - 1;
+        long offset = index * Double.BYTES;
+        costLayers[layer][(int) (offset >>> CHUNK_SHIFT)]
+                .putLong((int) (offset & CHUNK_MASK), Double.doubleToRawLongBits(cost) ^ UNSET_BITS);
+        offset = layerOffsets[layer] + index;
+        predecessors[(int) (offset >>> CHUNK_SHIFT)].put((int) (offset & CHUNK_MASK), (byte) (predecessor + 1));
+    }
+
+    @Override
+    public void close() {
+        if (directory == null) {
+            return;
+        }
+        costLayers = null;
+        predecessors = null;
+        for (int layer = 1; layer < cityCount; layer++) {
+            delete("costs-" + layer + ".bin");
+        }
+        delete("predecessors.bin");
+        try {
+            Files.deleteIfExists(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not delete " + directory, e);
+        }
+        directory = null;
+    }
+}
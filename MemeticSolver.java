@@ -0,0 +1,576 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntFunction;
+
+/**
+ * Population-based (memetic) solver: a small pool of locally optimal tours is improved by
+ * recombining them and climbing the offspring with {@link LocalSearch}.
+ *
+ * Offspring are made with the distance preserving crossover (DPX) of Freisleben and Merz. The
+ * edges both parents share are kept as fragments, which are joined again by always moving on to
+ * the nearest free fragment end over an edge that neither parent has. The child is as far from
+ * each parent as the parents are from each other, and good common structure survives. Only the
+ * cities at the new edges are queued for the local search, so a child costs little more than the
+ * edges that changed. Every generation breeds as many children as there are tours, in parallel on
+ * a fork-join pool; then each child, in a fixed order, replaces the worst tour if it is shorter and
+ * not already in the pool. When no child has been accepted for a few generations, every tour but
+ * the best is replaced by a fresh climb.
+ *
+ * Memory stays bounded by the population: the pool holds populationSize tour arrays, and each
+ * worker thread needs a few arrays of n entries for a child.
+ */
+public class MemeticSolver {
+
+    /** The default number of generations without a shorter tour before the search stops. */
+    public static final int DEFAULT_GENERATIONS = 100;
+
+    private static final long NO_DEADLINE = Long.MAX_VALUE;
+    private static final int RESTART_AFTER = 5;
+    private static final int MIN_CITIES = 8;
+
+    private final TspInstance instance;
+    private final DistanceOracle distances;
+    private final double[] x;
+    private final double[] y;
+    private final int populationSize;
+    private final int maxIterations;
+    private final int plateauLimit;
+    private final int neighborCount;
+    private int generationLimit = DEFAULT_GENERATIONS;
+    private long seed = System.nanoTime();
+    private ProgressListener progressListener;
+    private SolverMetrics metrics = new SolverMetrics("MemeticSolver");
+    private int[] neighbors;
+    private SpatialGrid grid;
+    private AtomicBoolean stop;
+    private long deadline;
+    private int generationsRun;
+
+    /**
+     * A tour of the population with its length and the hash of its edge set.
+     */
+    private static final class Member {
+        final int[] tour;
+        final double cost;
+        final long edgeHash;
+
+        Member(int[] tour, double cost, long edgeHash) {
+            this.tour = tour;
+            this.cost = cost;
+            this.edgeHash = edgeHash;
+        }
+    }
+
+    /**
+     * Creates a solver with the default distance storage.
+     *
+     * @param instance The cities.
+     * @param populationSize The number of tours kept, at least 2.
+     * @param maxIterations The iteration limit of each climb.
+     * @param plateauLimit The plateau limit of each climb.
+     * @param neighborCount The number of candidate neighbours per city, at least 2.
+     */
+    public MemeticSolver(TspInstance instance, int populationSize, int maxIterations, int plateauLimit,
+                         int neighborCount) {
+        this(instance, DistanceOracle.create(instance, "auto"), populationSize, maxIterations, plateauLimit,
+                neighborCount);
+    }
+
+    /**
+     * Creates a solver measuring tours with the given distances.
+     *
+     * @param instance The cities.
+     * @param distances The distance between every pair of cities.
+     * @param populationSize The number of tours kept, at least 2.
+     * @param maxIterations The iteration limit of each climb.
+     * @param plateauLimit The plateau limit of each climb.
+     * @param neighborCount The number of candidate neighbours per city, at least 2.
+     */
+    MemeticSolver(TspInstance instance, DistanceOracle distances, int populationSize, int maxIterations,
+                  int plateauLimit, int neighborCount) {
+        if (populationSize < 2) {
+            throw new IllegalArgumentException("Population must hold at least 2 tours: " + populationSize);
+        }
+        if (neighborCount < 2) {
+            throw new IllegalArgumentException("Memetic search needs at least 2 neighbours per city: " + neighborCount);
+        }
+        this.instance = instance;
+        this.distances = distances;
+        this.x = instance.getX();
+        this.y = instance.getY();
+        this.populationSize = populationSize;
+        this.maxIterations = maxIterations;
+        this.plateauLimit = plateauLimit;
+        this.neighborCount = Math.min(neighborCount, instance.size() - 1);
+    }
+
+    /**
+     * Sets how many generations in a row may pass without a shorter tour before the search stops.
+     *
+     * @param generations The number of generations, at least 1.
+     */
+    public void setGenerations(int generations) {
+        if (generations < 1) {
+            throw new IllegalArgumentException("Generations must be at least 1: " + generations);
+        }
+        generationLimit = generations;
+    }
+
+    /**
+     * Sets the seed all random choices are derived from. A seeded solve gives the same tour with
+     * any number of threads, unless a budget cuts it short.
+     *
+     * @param seed The seed.
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Sets the listener told about the best tour length after every generation.
+     *
+     * @param listener The listener, or null for none.
+     */
+    public void setProgressListener(ProgressListener listener) {
+        progressListener = listener;
+    }
+
+    /**
+     * Sets the metrics the solve reports its phase times and counters to.
+     *
+     * @param metrics The metrics, possibly shared with other solvers.
+     */
+    public void setMetrics(SolverMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return The phase times and counters of all solves so far.
+     */
+    public SolverMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return The number of generations of the last solve.
+     */
+    public int getGenerationsRun() {
+        return generationsRun;
+    }
+
+    /**
+     * Solves the instance.
+     *
+     * @param threads The number of children bred at the same time.
+     * @param budgetMs The wall-clock budget in milliseconds, or 0 for none.
+     * @param targetCost A tour length that is good enough to stop at, or 0 for none.
+     * @return The shortest tour found, starting at city 0.
+     */
+    @SuppressWarnings("try")
+    public TourResult solve(int threads, long budgetMs, double targetCost) {
+        int n = x.length;
+        deadline = budgetMs > 0 ? System.nanoTime() + budgetMs * 1000000L : NO_DEADLINE;
+        stop = new AtomicBoolean();
+        generationsRun = 0;
+        if (n < MIN_CITIES) {
+            // Too few cities for fragments; one climb finds the best tour.
+            climbTSP climber = new climbTSP(instance, distances, maxIterations, plateauLimit, neighborCount);
+            climber.setMetrics(metrics);
+            return climber.solve(new SplittableRandom(seed), stop, deadline, null);
+        }
+        try (SolverMetrics.Phase phase = metrics.time("neighbors")) {
+            grid = new SpatialGrid(x, y);
+            neighbors = grid.nearestNeighbors(neighborCount);
+        }
+        ProgressTracker progress = ProgressTracker.of("MemeticSolver", "generations", progressListener);
+        SplittableRandom master = new SplittableRandom(seed);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        Member[] population;
+        try {
+            try (SolverMetrics.Phase phase = metrics.time("population")) {
+                population = fill(pool, new Member[0], master);
+            }
+            Member best = best(population);
+            int sinceBest = 0;
+            int sinceAccepted = 0;
+            try (SolverMetrics.Phase phase = metrics.time("generations")) {
+                while (sinceBest < generationLimit && best.cost > targetCost && !stop.get()
+                        && (deadline == NO_DEADLINE || System.nanoTime() - deadline < 0)) {
+                    Member[] parents = population;
+                    SplittableRandom[] streams = streams(master, parents.length);
+                    Member[] children = breed(pool, parents.length,
+                            i -> child(parents, streams[i]));
+                    int accepted = 0;
+                    for (Member child : children) {
+                        if (child != null && admit(population, child)) {
+                            accepted++;
+                        }
+                    }
+                    generationsRun++;
+                    metrics.add("memetic.generations", 1);
+                    metrics.add("memetic.offspring", children.length);
+                    metrics.add("memetic.accepted", accepted);
+
+                    Member generationBest = best(population);
+                    if (generationBest.cost < best.cost) {
+                        best = generationBest;
+                        sinceBest = 0;
+                    } else {
+                        sinceBest++;
+                    }
+                    sinceAccepted = accepted > 0 ? 0 : sinceAccepted + 1;
+                    if (sinceAccepted >= RESTART_AFTER) {
+                        // The pool has converged: keep the best tour and climb fresh ones around it.
+                        metrics.add("memetic.restarts", 1);
+                        population = fill(pool, new Member[] {best}, master);
+                        sinceAccepted = 0;
+                    }
+                    if (progress != null) {
+                        progress.update(1, best.cost);
+                    }
+                }
+            }
+            TourResult result = new TourResult(TourResult.startAtZero(best.tour), best.cost);
+            if (progress != null) {
+                progress.finish(result.getCost());
+            }
+            return result;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Fills the population up with climbs from new starting tours. The first tour of an empty
+     * population starts from the greedy edge tour, all others from nearest neighbour tours from
+     * random cities. Tours already in the population are dropped, and the population may stay
+     * smaller if the starts keep climbing to the same tours.
+     */
+    private Member[] fill(ForkJoinPool pool, Member[] kept, SplittableRandom master) {
+        Member[] population = kept;
+        for (int round = 0; round < 2 && population.length < populationSize; round++) {
+            int missing = populationSize - population.length;
+            boolean greedy = population.length == 0;
+            SplittableRandom[] streams = streams(master, missing);
+            Member[] climbed = breed(pool, missing, i -> {
+                int[] start = greedy && i == 0
+                        ? TourConstruction.greedyEdge(x, y, distances, neighbors, neighborCount)
+                        : grid.nearestNeighborTour(streams[i].nextInt(x.length));
+                return climb(start, allCities());
+            });
+            for (Member member : climbed) {
+                if (population.length < populationSize && !contains(population, member)) {
+                    population = Arrays.copyOf(population, population.length + 1);
+                    population[population.length - 1] = member;
+                }
+            }
+        }
+        return population;
+    }
+
+    /**
+     * Splits a random stream for each of the tasks of a batch, in order, so that every task sees
+     * the same random numbers whichever thread runs it.
+     */
+    private static SplittableRandom[] streams(SplittableRandom master, int count) {
+        SplittableRandom[] streams = new SplittableRandom[count];
+        for (int i = 0; i < count; i++) {
+            streams[i] = master.split();
+        }
+        return streams;
+    }
+
+    /**
+     * Runs a batch of tasks on the pool and waits for all of them.
+     */
+    private static Member[] breed(ForkJoinPool pool, int count, IntFunction<Member> task) {
+        Member[] results = new Member[count];
+        pool.invoke(new Batch(task, results, 0, count));
+        return results;
+    }
+
+    /**
+     * Fork-join task running a range of a batch.
+     */
+    private static final class Batch extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final IntFunction<Member> task;
+        private final Member[] results;
+        private final int from;
+        private final int to;
+
+        Batch(IntFunction<Member> task, Member[] results, int from, int to) {
+            this.task = task;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                results[from] = task.apply(from);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Batch(task, results, from, middle), new Batch(task, results, middle, to));
+        }
+    }
+
+    /**
+     * Puts a child into the population in place of the worst tour if it is shorter than that tour
+     * and not already in the population.
+     *
+     * @return true if the child was admitted; false otherwise.
+     */
+    private static boolean admit(Member[] population, Member child) {
+        int worst = 0;
+        for (int i = 1; i < population.length; i++) {
+            if (population[i].cost > population[worst].cost) {
+                worst = i;
+            }
+        }
+        if (child.cost >= population[worst].cost || contains(population, child)) {
+            return false;
+        }
+        population[worst] = child;
+        return true;
+    }
+
+    private static boolean contains(Member[] population, Member member) {
+        for (Member other : population) {
+            if (other.edgeHash == member.edgeHash && other.cost == member.cost) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Member best(Member[] population) {
+        Member best = population[0];
+        for (Member member : population) {
+            if (member.cost < best.cost) {
+                best = member;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Breeds and climbs one child of two different random parents.
+     *
+     * @return The child, or null if the parents are the same tour.
+     */
+    private Member child(Member[] population, SplittableRandom random) {
+        if (population.length < 2) {
+            return null;
+        }
+        int first = random.nextInt(population.length);
+        int second = random.nextInt(population.length - 1);
+        if (second >= first) {
+            second++;
+        }
+        int[] newEdgeEnds = new int[x.length + 1];
+        int[] order = crossover(population[first].tour, population[second].tour, newEdgeEnds);
+        if (order == null) {
+            return null;
+        }
+        return climb(order, Arrays.copyOf(newEdgeEnds, newEdgeEnds[x.length]));
+    }
+
+    /**
+     * Distance preserving crossover. The tour of the first parent is cut into fragments at every
+     * edge the second parent does not have. Starting from the fragment of the first parent's first
+     * city, the child always continues with the nearest free fragment end among the candidate
+     * neighbours of its current end, over an edge that neither parent has; if there is none, it
+     * moves on to the nearest free fragment end of all.
+     *
+     * @param a The tour of the first parent.
+     * @param b The tour of the second parent.
+     * @param newEdgeEnds Receives each city at a new edge once, and their number in entry n.
+     * @return The child, or null if the parents have the same edges.
+     */
+    private int[] crossover(int[] a, int[] b, int[] newEdgeEnds) {
+        int n = a.length;
+        int[] nextA = new int[n];
+        int[] prevA = new int[n];
+        int[] nextB = new int[n];
+        int[] prevB = new int[n];
+        for (int i = 0; i < n; i++) {
+            nextA[a[i]] = a[(i + 1) % n];
+            prevA[a[(i + 1) % n]] = a[i];
+            nextB[b[i]] = b[(i + 1) % n];
+            prevB[b[(i + 1) % n]] = b[i];
+        }
+
+        // Find a city where a fragment begins, that is one whose edge to its predecessor in a is
+        // not in b.
+        int first = -1;
+        for (int i = 0; i < n && first < 0; i++) {
+            int city = a[i];
+            if (!inTour(prevA[city], city, nextB, prevB)) {
+                first = city;
+            }
+        }
+        if (first < 0) {
+            return null;
+        }
+
+        // Fragments run forwards along a; the array holds the other end of every fragment end, and
+        // -1 for cities inside a fragment.
+        int[] otherEnd = new int[n];
+        Arrays.fill(otherEnd, -1);
+        int[] ends = new int[n];
+        int fragmentCount = 0;
+        int city = first;
+        for (int visited = 0; visited < n; ) {
+            int start = city;
+            visited++;
+            while (visited < n && inTour(city, nextA[city], nextB, prevB)) {
+                city = nextA[city];
+                visited++;
+            }
+            otherEnd[start] = city;
+            otherEnd[city] = start;
+            ends[fragmentCount++] = start;
+            city = nextA[city];
+        }
+
+        // Free fragments, kept by their first city, with swap removal.
+        int[] slot = new int[n];
+        for (int i = 0; i < fragmentCount; i++) {
+            slot[ends[i]] = i;
+        }
+        int freeCount = fragmentCount;
+        boolean[] used = new boolean[n];
+        boolean[] queued = new boolean[n];
+
+        int[] child = new int[n];
+        int length = 0;
+        int edgeEnds = 0;
+        int current = first;
+        while (true) {
+            // Take the fragment entered at current and walk it to its other end.
+            int exit = otherEnd[current];
+            int head = current == otherEnd[exit] && slot[current] < freeCount && ends[slot[current]] == current
+                    ? current : exit;
+            int removed = slot[head];
+            int moved = ends[--freeCount];
+            ends[removed] = moved;
+            slot[moved] = removed;
+            used[current] = true;
+            used[exit] = true;
+            boolean forwards = head == current;
+            int step = current;
+            child[length++] = step;
+            while (step != exit) {
+                step = forwards ? nextA[step] : prevA[step];
+                child[length++] = step;
+            }
+            if (freeCount == 0) {
+                break;
+            }
+            int next = nearestFreeEnd(exit, otherEnd, used, nextA, prevA, nextB, prevB);
+            if (next < 0) {
+                next = nearestFreeEnd(exit, ends, freeCount, otherEnd);
+            }
+            edgeEnds = queue(exit, queued, newEdgeEnds, edgeEnds);
+            edgeEnds = queue(next, queued, newEdgeEnds, edgeEnds);
+            current = next;
+        }
+        edgeEnds = queue(child[n - 1], queued, newEdgeEnds, edgeEnds);
+        edgeEnds = queue(child[0], queued, newEdgeEnds, edgeEnds);
+        newEdgeEnds[n] = edgeEnds;
+        return child;
+    }
+
+    private static int queue(int city, boolean[] queued, int[] cities, int count) {
+        if (!queued[city]) {
+            queued[city] = true;
+            cities[count++] = city;
+        }
+        return count;
+    }
+
+    private static boolean inTour(int city, int other, int[] next, int[] prev) {
+        return next[city] == other || prev[city] == other;
+    }
+
+    /**
+     * Finds the nearest free fragment end among the candidate neighbours of a city that is joined
+     * to it by neither parent.
+     *
+     * @return The end, or -1 if no candidate neighbour qualifies.
+     */
+    private int nearestFreeEnd(int city, int[] otherEnd, boolean[] used, int[] nextA, int[] prevA, int[] nextB,
+                               int[] prevB) {
+        for (int entry = city * neighborCount; entry < (city + 1) * neighborCount; entry++) {
+            int candidate = neighbors[entry];
+            if (otherEnd[candidate] >= 0 && !used[candidate]
+                    && !inTour(city, candidate, nextA, prevA) && !inTour(city, candidate, nextB, prevB)) {
+                return candidate;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the nearest end of all free fragments.
+     */
+    private int nearestFreeEnd(int city, int[] ends, int freeCount, int[] otherEnd) {
+        int best = -1;
+        double bestDistance = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < freeCount; i++) {
+            int end = ends[i];
+            for (int side = 0; side < 2; side++) {
+                double distance = distances.distance(city, end);
+                if (distance < bestDistance) {
+                    bestDistance = distance;
+                    best = end;
+                }
+                end = otherEnd[end];
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Climbs a tour with the local search, starting from the given cities.
+     */
+    private Member climb(int[] order, int[] start) {
+        int n = order.length;
+        Tour tour = n >= climbTSP.TWO_LEVEL_THRESHOLD ? new TwoLevelTour(order) : new ArrayTour(order);
+        LocalSearch search = new LocalSearch(distances, neighbors, neighborCount);
+        int iterations = search.optimize(tour, start, maxIterations, plateauLimit, stop, deadline, null);
+        metrics.add("climb.iterations", iterations);
+        metrics.add("climb.movesAccepted", search.getAccepted());
+        int[] climbed = tour.toArray();
+        return new Member(climbed, Geometry.tourLength(distances, climbed), edgeHash(climbed));
+    }
+
+    private int[] allCities() {
+        int[] cities = new int[x.length];
+        for (int i = 0; i < cities.length; i++) {
+            cities[i] = i;
+        }
+        return cities;
+    }
+
+    /**
+     * Hashes the edge set of a tour, whatever its starting city and direction.
+     */
+    private static long edgeHash(int[] tour) {
+        long hash = 0;
+        for (int i = 0; i < tour.length; i++) {
+            int a = tour[i];
+            int b = tour[(i + 1) % tour.length];
+            long edge = a < b ? ((long) a << 32) | b : ((long) b << 32) | a;
+            hash += ResultCache.mix(edge);
+        }
+        return hash;
+    }
+}
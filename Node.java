@@ -92,9 +92,15 @@ public class Node {
         return pathLength;
     }
 
+    /**
+     * Computes the straight-line distance to another city.
+     *
+     * @param other The other city.
+     * @return The distance between the two cities.
+     */
     public double distanceTo(Node other) {
-        int dx = other.posX - this.posY;
-        int dy = other.posY - this.posX;
+        double dx = other.posX - this.posX;
+        double dy = other.posY - this.posY;
         return Math.sqrt(dx * dx + dy * dy);
     }
 
@@ -0,0 +1,60 @@
+import java.util.stream.IntStream;
+
+/**
+ * Lower triangle of the distance matrix as floats, 2 bytes per ordered pair of cities.
+ * Distances are rounded to float precision.
+ */
+class PackedDistances implements DistanceOracle {
+
+    private final int cityCount;
+    private final float[] distances;
+
+    /**
+     * Computes every distance of an instance, in parallel.
+     *
+     * @param instance The cities.
+     */
+    PackedDistances(TspInstance instance) {
+        cityCount = instance.size();
+        long entries = (long) cityCount * (cityCount - 1) / 2;
+        if (entries > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Too many cities for a packed distance table: " + cityCount);
+        }
+        distances = new float[(int) entries];
+        IntStream.range(1, cityCount).parallel().forEach(i -> {
+            int row = rowStart(i);
+            for (int j = 0; j < i; j++) {
+                distances[row + j] = (float) instance.distance(i, j);
+            }
+        });
+    }
+
+    /**
+     * Calculates the memory a table needs.
+     *
+     * @param cityCount The number of cities.
+     * @return The size in bytes.
+     */
+    static long requiredBytes(int cityCount) {
+        return 4L * cityCount * (cityCount - 1) / 2;
+    }
+
+    private static int rowStart(int i) {
+        return (int) ((long) i * (i - 1) / 2);
+    }
+
+    @Override
+    public int size() {
+        return cityCount;
+    }
+
+    @Override
+    public double distance(int i, int j) {
+        return i > j ? distances[rowStart(i) + j] : distances[rowStart(j) + i];
+    }
+
+    @Override
+    public long memoryBytes() {
+        return requiredBytes(cityCount);
+    }
+}
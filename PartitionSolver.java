@@ -0,0 +1,424 @@
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Solves instances too large for one climb by splitting the plane into cells, solving every cell
+ * on its own and stitching the cell tours together.
+ *
+ * The cities are split recursively at the median of the longer side of their bounding box, as in
+ * Karp's partitioning scheme, until each cell holds at most the cell size. Cells are solved with
+ * {@link climbTSP}, or exactly with {@link dynaTSP} if they are tiny. The two halves of every split
+ * are solved in parallel on a fork-join pool and then merged into one tour by exchanging an edge of
+ * each half for two edges across the split line, choosing the cheapest exchange near the line.
+ * Finally a {@link LocalSearch} over the whole tour starts from the cities near a cell boundary,
+ * which repairs the seams without searching the cell interiors again.
+ */
+public class PartitionSolver {
+
+    /** The default maximum number of cities in a cell. */
+    public static final int DEFAULT_CELL_SIZE = 5000;
+
+    private static final long NO_DEADLINE = Long.MAX_VALUE;
+    private static final int EXACT_LIMIT = 12;
+    private static final int SEAM_CANDIDATES = 32;
+
+    private final TspInstance instance;
+    private final DistanceOracle distances;
+    private final double[] x;
+    private final double[] y;
+    private final int cellSize;
+    private final int maxIterations;
+    private final int plateauLimit;
+    private final int neighborCount;
+    private String initMode = "greedy";
+    private long seed = System.nanoTime();
+    private long deadline = NO_DEADLINE;
+    private AtomicBoolean stop;
+    private boolean[] boundary;
+    private int cellsSolved;
+    private SolverMetrics metrics = new SolverMetrics("PartitionSolver");
+
+    /**
+     * Creates a solver with the default distance storage.
+     *
+     * @param instance The cities.
+     * @param cellSize The maximum number of cities in a cell.
+     * @param maxIterations The iteration limit of each cell climb and of the seam repair.
+     * @param plateauLimit The plateau limit of each cell climb and of the seam repair.
+     * @param neighborCount The number of candidate neighbours per city, at least 2.
+     */
+    public PartitionSolver(TspInstance instance, int cellSize, int maxIterations, int plateauLimit,
+                           int neighborCount) {
+        this(instance, DistanceOracle.create(instance, "auto"), cellSize, maxIterations, plateauLimit, neighborCount);
+    }
+
+    /**
+     * Creates a solver measuring the whole tour with the given distances.
+     *
+     * @param instance The cities.
+     * @param distances The distance between every pair of cities.
+     * @param cellSize The maximum number of cities in a cell.
+     * @param maxIterations The iteration limit of each cell climb and of the seam repair.
+     * @param plateauLimit The plateau limit of each cell climb and of the seam repair.
+     * @param neighborCount The number of candidate neighbours per city, at least 2.
+     */
+    PartitionSolver(TspInstance instance, DistanceOracle distances, int cellSize, int maxIterations,
+                    int plateauLimit, int neighborCount) {
+        if (cellSize < 2) {
+            throw new IllegalArgumentException("Cell size must be at least 2: " + cellSize);
+        }
+        if (neighborCount < 2) {
+            throw new IllegalArgumentException("Partitioning needs at least 2 neighbours per city: " + neighborCount);
+        }
+        this.instance = instance;
+        this.distances = distances;
+        this.x = instance.getX();
+        this.y = instance.getY();
+        this.cellSize = cellSize;
+        this.maxIterations = maxIterations;
+        this.plateauLimit = plateauLimit;
+        this.neighborCount = neighborCount;
+    }
+
+    /**
+     * Chooses how the starting tour of every cell climb is built, see {@link climbTSP#setInitialTour}.
+     *
+     * @param mode One of random, hilbert, nearest or greedy (the default).
+     */
+    public void setInitialTour(String mode) {
+        climbTSP.checkInitialTour(mode);
+        initMode = mode;
+    }
+
+    /**
+     * Sets the seed the random streams of the cell climbs are derived from.
+     *
+     * @param seed The seed.
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Sets the metrics the solve reports its phase times to. The cell climbs report their move
+     * counters to the same metrics.
+     *
+     * @param metrics The metrics, possibly shared with other solvers.
+     */
+    public void setMetrics(SolverMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return The phase times and counters of all solves so far.
+     */
+    public SolverMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return The number of cells of the last solve.
+     */
+    public int getCellsSolved() {
+        return cellsSolved;
+    }
+
+    /**
+     * Solves the instance.
+     *
+     * @param threads The number of cells solved at the same time.
+     * @param budgetMs The wall-clock budget in milliseconds, or 0 for none. Cells still climbing and
+     *                 the seam repair are cut short when it runs out.
+     * @return The tour, starting at city 0.
+     */
+    @SuppressWarnings("try")
+    public TourResult solve(int threads, long budgetMs) {
+        int n = x.length;
+        deadline = budgetMs > 0 ? System.nanoTime() + budgetMs * 1000000L : NO_DEADLINE;
+        stop = new AtomicBoolean();
+        boundary = new boolean[n];
+        cellsSolved = 0;
+        int[] cities = new int[n];
+        for (int i = 0; i < n; i++) {
+            cities[i] = i;
+        }
+        int[] cellOf = new int[n];
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        int[] tour;
+        try (SolverMetrics.Phase phase = metrics.time("partition")) {
+            tour = pool.invoke(new CellTask(cities, cellOf, 0, n));
+        } finally {
+            pool.shutdown();
+        }
+        metrics.add("partition.cells", cellsSolved);
+        if (n > 4) {
+            try (SolverMetrics.Phase phase = metrics.time("repair")) {
+                tour = repairSeams(tour, cellOf);
+            }
+        }
+        int[] rotated = TourResult.startAtZero(tour);
+        return new TourResult(rotated, Geometry.tourLength(distances, rotated));
+    }
+
+    /**
+     * Splits a range of cities in two, or solves it if it is small enough, and returns its tour.
+     */
+    private final class CellTask extends RecursiveTask<int[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] cities;
+        private final int[] cellOf;
+        private final int from;
+        private final int to;
+
+        CellTask(int[] cities, int[] cellOf, int from, int to) {
+            this.cities = cities;
+            this.cellOf = cellOf;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected int[] compute() {
+            if (to - from <= cellSize) {
+                return solveCell(cities, cellOf, from, to);
+            }
+            double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+            double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+            for (int i = from; i < to; i++) {
+                int city = cities[i];
+                minX = Math.min(minX, x[city]);
+                minY = Math.min(minY, y[city]);
+                maxX = Math.max(maxX, x[city]);
+                maxY = Math.max(maxY, y[city]);
+            }
+            double[] axis = maxX - minX >= maxY - minY ? x : y;
+            int middle = (from + to) >>> 1;
+            select(cities, axis, from, to - 1, middle);
+
+            CellTask left = new CellTask(cities, cellOf, from, middle);
+            left.fork();
+            int[] rightTour = new CellTask(cities, cellOf, middle, to).compute();
+            int[] leftTour = left.join();
+            return merge(leftTour, rightTour, axis, axis[cities[middle]]);
+        }
+    }
+
+    /**
+     * Rearranges a range of cities so that the city at position k has the k-th smallest coordinate,
+     * with no larger coordinate before it and no smaller one after it.
+     *
+     * @param cities The cities.
+     * @param axis The coordinate of every city along the split axis.
+     * @param low The first position of the range.
+     * @param high The last position of the range.
+     * @param k The position to put in place.
+     */
+    private static void select(int[] cities, double[] axis, int low, int high, int k) {
+        while (low < high) {
+            // Hoare partition around the median of three.
+            int middle = (low + high) >>> 1;
+            double a = axis[cities[low]], b = axis[cities[middle]], c = axis[cities[high]];
+            double pivot = Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (axis[cities[i]] < pivot) {
+                    i++;
+                }
+                while (axis[cities[j]] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    int temp = cities[i];
+                    cities[i++] = cities[j];
+                    cities[j--] = temp;
+                }
+            }
+            if (k <= j) {
+                high = j;
+            } else if (k >= i) {
+                low = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Solves one cell: exactly with dynaTSP if it is tiny, otherwise with one climb.
+     *
+     * @return The tour of the cell, as global city numbers.
+     */
+    private int[] solveCell(int[] cities, int[] cellOf, int from, int to) {
+        int count = to - from;
+        int cell;
+        synchronized (this) {
+            cell = cellsSolved++;
+        }
+        int[] members = new int[count];
+        double[] cellX = new double[count];
+        double[] cellY = new double[count];
+        for (int i = 0; i < count; i++) {
+            int city = cities[from + i];
+            members[i] = city;
+            cellX[i] = x[city];
+            cellY[i] = y[city];
+            cellOf[city] = cell;
+        }
+        if (count < 4) {
+            return members;
+        }
+        TspInstance cellInstance = new TspInstance(instance.getName() + "#" + cell, cellX, cellY, instance.getMetric());
+        DistanceOracle cellDistances = DistanceOracle.create(cellInstance, "lazy");
+        int[] local = null;
+        if (count <= EXACT_LIMIT) {
+            double[][] matrix = dynaTSP.calculateDistances(cellDistances);
+            TourResult exact = new dynaTSP(matrix, new CompactTable(count)).solve(1);
+            if (exact != null) {
+                local = exact.getTour();
+            }
+        }
+        if (local == null) {
+            climbTSP climber = new climbTSP(cellInstance, cellDistances, maxIterations, plateauLimit,
+                    Math.min(neighborCount, count - 1));
+            climber.setInitialTour(initMode);
+            climber.setMetrics(metrics);
+            local = climber.solve(new SplittableRandom(seed + from), stop, deadline, null).getTour();
+        }
+        int[] tour = new int[count];
+        for (int i = 0; i < count; i++) {
+            tour[i] = members[local[i]];
+        }
+        return tour;
+    }
+
+    /**
+     * Joins the tours of the two halves of a split. The cheapest exchange of one edge from each
+     * tour for two edges between them is chosen among the edges at the cities closest to the split
+     * line on either side.
+     *
+     * @param left The tour of the cities below the split.
+     * @param right The tour of the cities above the split.
+     * @param axis The coordinate of every city along the split axis.
+     * @param split The coordinate of the split line.
+     * @return The joined tour.
+     */
+    private int[] merge(int[] left, int[] right, double[] axis, double split) {
+        int[] leftEdges = closestToLine(left, axis, split);
+        int[] rightEdges = closestToLine(right, axis, split);
+        int bestI = 0;
+        int bestJ = 0;
+        boolean bestForward = false;
+        double bestDelta = Double.POSITIVE_INFINITY;
+        for (int i : leftEdges) {
+            int a = left[i];
+            int b = left[(i + 1) % left.length];
+            double removedLeft = distances.distance(a, b);
+            for (int j : rightEdges) {
+                int c = right[j];
+                int d = right[(j + 1) % right.length];
+                double removed = removedLeft + distances.distance(c, d);
+                // a -> c backwards round the right tour to d -> b, or a -> d forwards round to c -> b.
+                double backward = distances.distance(a, c) + distances.distance(d, b) - removed;
+                double forward = distances.distance(a, d) + distances.distance(c, b) - removed;
+                if (backward < bestDelta) {
+                    bestDelta = backward;
+                    bestI = i;
+                    bestJ = j;
+                    bestForward = false;
+                }
+                if (forward < bestDelta) {
+                    bestDelta = forward;
+                    bestI = i;
+                    bestJ = j;
+                    bestForward = true;
+                }
+            }
+        }
+
+        int[] joined = new int[left.length + right.length];
+        System.arraycopy(left, 0, joined, 0, bestI + 1);
+        int position = bestI + 1;
+        int m = right.length;
+        for (int step = 0; step < m; step++) {
+            joined[position++] = bestForward ? right[(bestJ + 1 + step) % m] : right[(bestJ - step + m) % m];
+        }
+        System.arraycopy(left, bestI + 1, joined, position, left.length - bestI - 1);
+        boundary[left[bestI]] = true;
+        boundary[left[(bestI + 1) % left.length]] = true;
+        boundary[right[bestJ]] = true;
+        boundary[right[(bestJ + 1) % m]] = true;
+        return joined;
+    }
+
+    /**
+     * Finds the positions of the tour edges at the cities nearest to the split line.
+     *
+     * @return The start positions of the edges before and after each of those cities.
+     */
+    private static int[] closestToLine(int[] tour, double[] axis, double split) {
+        int count = Math.min(SEAM_CANDIDATES, tour.length);
+        double[] gaps = new double[count];
+        int[] positions = new int[count];
+        int found = 0;
+        for (int i = 0; i < tour.length; i++) {
+            double gap = Math.abs(axis[tour[i]] - split);
+            if (found == count && gap >= gaps[count - 1]) {
+                continue;
+            }
+            // Insertion into the sorted list of the closest cities so far.
+            int slot = found < count ? found++ : count - 1;
+            while (slot > 0 && gaps[slot - 1] > gap) {
+                gaps[slot] = gaps[slot - 1];
+                positions[slot] = positions[slot - 1];
+                slot--;
+            }
+            gaps[slot] = gap;
+            positions[slot] = i;
+        }
+        int[] edges = new int[2 * found];
+        for (int i = 0; i < found; i++) {
+            edges[2 * i] = positions[i];
+            edges[2 * i + 1] = (positions[i] - 1 + tour.length) % tour.length;
+        }
+        return edges;
+    }
+
+    /**
+     * Improves the stitched tour around the cell boundaries. The search starts from every city that
+     * has a candidate neighbour in another cell, and from the ends of the edges added by the merges.
+     *
+     * @param tour The stitched tour.
+     * @param cellOf The cell of every city.
+     * @return The repaired tour.
+     */
+    private int[] repairSeams(int[] tour, int[] cellOf) {
+        int n = tour.length;
+        int k = Math.min(neighborCount, n - 1);
+        int[] neighbors = new SpatialGrid(x, y).nearestNeighbors(k);
+        int count = 0;
+        for (int city = 0; city < n; city++) {
+            for (int entry = city * k; entry < (city + 1) * k && !boundary[city]; entry++) {
+                boundary[city] = cellOf[neighbors[entry]] != cellOf[city];
+            }
+            if (boundary[city]) {
+                count++;
+            }
+        }
+        int[] start = new int[count];
+        count = 0;
+        for (int city = 0; city < n; city++) {
+            if (boundary[city]) {
+                start[count++] = city;
+            }
+        }
+        Tour repaired = n >= climbTSP.TWO_LEVEL_THRESHOLD ? new TwoLevelTour(tour) : new ArrayTour(tour);
+        new LocalSearch(distances, neighbors, k)
+                .optimize(repaired, start, maxIterations, plateauLimit, stop, deadline, null);
+        return repaired.toArray();
+    }
+}
@@ -0,0 +1,21 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event spanning one phase of a solve, such as loading, distances or search.
+ */
+@Name("tpssolver.Phase")
+@Label("Solver Phase")
+@Category("TSP Solver")
+@Description("One phase of a solve")
+class PhaseEvent extends Event {
+
+    @Label("Solver")
+    String solver;
+
+    @Label("Phase")
+    String phase;
+}
@@ -0,0 +1,85 @@
+/**
+ * A snapshot of a solver's progress.
+ */
+public class ProgressEvent {
+    private final String solver;
+    private final double bestCost;
+    private final long work;
+    private final String workUnit;
+    private final long elapsedNanos;
+    private final boolean finished;
+
+    /**
+     * Creates an event.
+     *
+     * @param solver The name of the solver.
+     * @param bestCost The length of the best tour found so far, or NaN if there is none yet.
+     * @param work The amount of work done so far.
+     * @param workUnit What the work is counted in, such as "iterations" or "states".
+     * @param elapsedNanos The time since the solve started.
+     * @param finished Whether this is the last event of the solve.
+     */
+    ProgressEvent(String solver, double bestCost, long work, String workUnit, long elapsedNanos, boolean finished) {
+        this.solver = solver;
+        this.bestCost = bestCost;
+        this.work = work;
+        this.workUnit = workUnit;
+        this.elapsedNanos = elapsedNanos;
+        this.finished = finished;
+    }
+
+    /**
+     * @return The name of the solver.
+     */
+    public String getSolver() {
+        return solver;
+    }
+
+    /**
+     * @return The length of the best tour found so far, or NaN if there is none yet.
+     */
+    public double getBestCost() {
+        return bestCost;
+    }
+
+    /**
+     * @return The amount of work done so far, counted in {@link #getWorkUnit()}.
+     */
+    public long getWork() {
+        return work;
+    }
+
+    /**
+     * @return What the work is counted in, such as "iterations" or "states".
+     */
+    public String getWorkUnit() {
+        return workUnit;
+    }
+
+    /**
+     * @return The work done per second since the solve started.
+     */
+    public double getWorkPerSecond() {
+        return elapsedNanos > 0 ? work * 1e9 / elapsedNanos : 0;
+    }
+
+    /**
+     * @return The time since the solve started in milliseconds.
+     */
+    public long getElapsedMillis() {
+        return elapsedNanos / 1000000;
+    }
+
+    /**
+     * @return Whether this is the last event of the solve.
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: best %.2f, %d %s (%.0f/s), %d ms%s", solver, bestCost, work, workUnit,
+                getWorkPerSecond(), getElapsedMillis(), finished ? ", finished" : "");
+    }
+}
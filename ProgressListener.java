@@ -0,0 +1,16 @@
+/**
+ * Receives progress reports from a running solver.
+ *
+ * Events are delivered on the solver's worker threads, at most a few times per second, so a
+ * listener should return quickly.
+ */
+@FunctionalInterface
+public interface ProgressListener {
+
+    /**
+     * Called when the solver reports progress.
+     *
+     * @param event The progress so far.
+     */
+    void onProgress(ProgressEvent event);
+}
@@ -0,0 +1,82 @@
+/**
+ * Collects progress from the threads of one solve and passes it on to a {@link ProgressListener},
+ * no more often than a fixed interval. Safe to update from several threads.
+ */
+class ProgressTracker {
+    private static final long DEFAULT_INTERVAL_NANOS = 100000000L;
+
+    private final String solver;
+    private final String workUnit;
+    private final ProgressListener listener;
+    private final long intervalNanos;
+    private final long startTime = System.nanoTime();
+    private long lastReport = startTime;
+    private long work;
+    private double bestCost = Double.NaN;
+
+    /**
+     * Creates a tracker that reports at most every 100 ms.
+     *
+     * @param solver The name of the solver.
+     * @param workUnit What the work is counted in.
+     * @param listener The listener to report to.
+     */
+    ProgressTracker(String solver, String workUnit, ProgressListener listener) {
+        this(solver, workUnit, listener, DEFAULT_INTERVAL_NANOS);
+    }
+
+    /**
+     * Creates a tracker.
+     *
+     * @param solver The name of the solver.
+     * @param workUnit What the work is counted in.
+     * @param listener The listener to report to.
+     * @param intervalNanos The minimum time between two reports.
+     */
+    ProgressTracker(String solver, String workUnit, ProgressListener listener, long intervalNanos) {
+        this.solver = solver;
+        this.workUnit = workUnit;
+        this.listener = listener;
+        this.intervalNanos = intervalNanos;
+    }
+
+    /**
+     * Creates a tracker for a listener that may be null.
+     *
+     * @param solver The name of the solver.
+     * @param workUnit What the work is counted in.
+     * @param listener The listener to report to, or null.
+     * @return The tracker, or null if there is no listener.
+     */
+    static ProgressTracker of(String solver, String workUnit, ProgressListener listener) {
+        return listener == null ? null : new ProgressTracker(solver, workUnit, listener);
+    }
+
+    /**
+     * Records work done and a tour found, and reports if the interval has passed.
+     *
+     * @param workDone The work done since the last update by the caller.
+     * @param cost The length of a tour the caller has, or NaN if it has none.
+     */
+    synchronized void update(long workDone, double cost) {
+        work += workDone;
+        if (cost < bestCost || Double.isNaN(bestCost)) {
+            bestCost = cost;
+        }
+        long now = System.nanoTime();
+        if (now - lastReport >= intervalNanos) {
+            lastReport = now;
+            listener.onProgress(new ProgressEvent(solver, bestCost, work, workUnit, now - startTime, false));
+        }
+    }
+
+    /**
+     * Reports the final result.
+     *
+     * @param cost The length of the tour returned.
+     */
+    synchronized void finish(double cost) {
+        bestCost = cost;
+        listener.onProgress(new ProgressEvent(solver, bestCost, work, workUnit, System.nanoTime() - startTime, true));
+    }
+}
@@ -0,0 +1,228 @@
+import java.util.Arrays;
+
+/**
+ * Exact solver using the Held-Karp recurrence on only those states that can still beat a known tour.
+ *
+ * States are expanded forwards, one layer (subset size) at a time. A state (subset, city) is kept
+ * only if its cost plus a lower bound on the rest of the tour is below the cost of the incumbent
+ * tour. The lower bound is the minimum spanning tree of the unvisited cities and city 0, plus the
+ * cheapest edge from the current city into them: the rest of any tour is a path through exactly
+ * those cities, which is a spanning tree plus that first edge. Surviving states are kept in a
+ * {@link StateMap} per layer instead of a dense table.
+ *
+ * If no state survives, no tour is shorter than the incumbent, which proves it optimal.
+ */
+class PrunedHeldKarp {
+
+    /** Largest instance whose subsets fit the bits of an int. */
+    static final int MAX_CITIES = 31;
+    private static final int MAX_CACHED_TREES = 1 << 18;
+
+    private final int cityCount;
+    private final double[][] distances;
+    private final int allCities;
+    private final StateMap spanningTrees;
+    private StateMap[] layers;
+    private long statesStored;
+
+    /**
+     * Creates a solver for one instance.
+     *
+     * @param distances The distance between every pair of cities, with dynaTSP.BIG_NUMBER on the diagonal.
+     * @throws IllegalArgumentException If there are more than MAX_CITIES cities.
+     */
+    PrunedHeldKarp(double[][] distances) {
+        if (distances.length > MAX_CITIES) {
+            throw new IllegalArgumentException("Too many cities for the pruned solver: " + distances.length);
+        }
+        this.cityCount = distances.length;
+        this.distances = distances;
+        this.allCities = (int) ((1L << cityCount) - 1);
+        this.spanningTrees = new StateMap(1024);
+    }
+
+    /**
+     * Solves the instance.
+     *
+     * @param incumbent A known tour, or null if none is known.
+     * @return An optimal tour: either a shorter one found by the search or the incumbent itself.
+     */
+    TourResult solve(TourResult incumbent) {
+        double bound = incumbent == null ? Double.POSITIVE_INFINITY : incumbent.getCost();
+        layers = new StateMap[cityCount];
+        statesStored = 0;
+        if (cityCount == 1) {
+            return new TourResult(new int[] {0}, 0);
+        }
+
+        layers[1] = new StateMap(cityCount);
+        for (int city = 1; city < cityCount; city++) {
+            push(layers[1], 1 | (1 << city), city, distances[0][city], 0, bound);
+        }
+        statesStored = layers[1].size();
+        for (int layer = 2; layer < cityCount; layer++) {
+            StateMap previous = layers[layer - 1];
+            StateMap next = new StateMap(previous.size());
+            for (int slot = 0; slot < previous.capacity(); slot++) {
+                long key = previous.keyAt(slot);
+                if (key == 0) {
+                    continue;
+                }
+                int subset = (int) (key >>> 5);
+                int city = (int) (key & 31);
+                double cost = previous.costAt(slot);
+                for (int nextCity = 1; nextCity < cityCount; nextCity++) {
+                    if ((subset & (1 << nextCity)) == 0) {
+                        push(next, subset | (1 << nextCity), nextCity, cost + distances[city][nextCity], city, bound);
+                    }
+                }
+            }
+            layers[layer] = next;
+            statesStored += next.size();
+        }
+
+        TourResult result = closeTour(bound);
+        return result != null ? result : incumbent;
+    }
+
+    /**
+     * Gets the number of states kept by the last solve, over all layers.
+     *
+     * @return The number of stored states.
+     */
+    long getStatesStored() {
+        return statesStored;
+    }
+
+    /**
+     * Gets the number of states a dense table would hold for this instance.
+     *
+     * @return The number of (city, subset) entries of a compact table.
+     */
+    long getDenseStates() {
+        return CompactTable.cellCount(cityCount);
+    }
+
+    /**
+     * Stores a state if it can still lead to a tour shorter than the bound.
+     */
+    private void push(StateMap layer, int subset, int city, double cost, int predecessor, double bound) {
+        if (cost + lowerBound(subset, city) >= bound) {
+            return;
+        }
+        layer.putIfLower(key(subset, city), cost, predecessor);
+    }
+
+    /**
+     * Packs a state into a map key.
+     *
+     * @param subset The visited cities.
+     * @param city The city the path ends at.
+     * @return The key, which is never 0 as the subset always contains city 0.
+     */
+    private static long key(int subset, int city) {
+        return ((long) subset << 5) | city;
+    }
+
+    /**
+     * Bounds the cost of completing a path from the given city through the unvisited cities back to city 0.
+     *
+     * @param subset The visited cities.
+     * @param city The city the path ends at.
+     * @return A lower bound on the remaining cost.
+     */
+    private double lowerBound(int subset, int city) {
+        int remaining = (allCities & ~subset) | 1;
+        if (remaining == 1) {
+            return distances[city][0];
+        }
+        double cheapestEdge = Double.POSITIVE_INFINITY;
+        for (int other = 0; other < cityCount; other++) {
+            if ((remaining & (1 << other)) != 0) {
+                cheapestEdge = Math.min(cheapestEdge, distances[city][other]);
+            }
+        }
+        return cheapestEdge + spanningTree(remaining);
+    }
+
+    /**
+     * Calculates the weight of a minimum spanning tree with Prim's algorithm, caching the result.
+     * The cache is emptied when it reaches MAX_CACHED_TREES entries.
+     *
+     * @param cities The cities to span.
+     * @return The total length of the tree's edges.
+     */
+    private double spanningTree(int cities) {
+        double cached = spanningTrees.getCost(cities);
+        if (!Double.isNaN(cached)) {
+            return cached;
+        }
+        int count = Integer.bitCount(cities);
+        int[] members = new int[count];
+        for (int i = 0, rest = cities; i < count; i++, rest &= rest - 1) {
+            members[i] = Integer.numberOfTrailingZeros(rest);
+        }
+        double[] closest = new double[count];
+        boolean[] inTree = new boolean[count];
+        Arrays.fill(closest, Double.POSITIVE_INFINITY);
+        closest[0] = 0;
+        double weight = 0;
+        for (int step = 0; step < count; step++) {
+            int best = -1;
+            for (int i = 0; i < count; i++) {
+                if (!inTree[i] && (best == -1 || closest[i] < closest[best])) {
+                    best = i;
+                }
+            }
+            inTree[best] = true;
+            weight += closest[best];
+            for (int i = 0; i < count; i++) {
+                if (!inTree[i]) {
+                    closest[i] = Math.min(closest[i], distances[members[best]][members[i]]);
+                }
+            }
+        }
+        if (spanningTrees.size() >= MAX_CACHED_TREES) {
+            spanningTrees.clear();
+        }
+        spanningTrees.putIfLower(cities, weight, 0);
+        return weight;
+    }
+
+    /**
+     * Closes the cheapest complete path back to city 0 and rebuilds its tour.
+     *
+     * @param bound The cost of the incumbent.
+     * @return The tour, or null if no complete path beats the incumbent.
+     */
+    private TourResult closeTour(double bound) {
+        StateMap last = layers[cityCount - 1];
+        double bestCost = bound;
+        long bestKey = 0;
+        for (int slot = 0; slot < last.capacity(); slot++) {
+            long key = last.keyAt(slot);
+            if (key == 0) {
+                continue;
+            }
+            double cost = last.costAt(slot) + distances[(int) (key & 31)][0];
+            if (cost < bestCost) {
+                bestCost = cost;
+                bestKey = key;
+            }
+        }
+        if (bestKey == 0) {
+            return null;
+        }
+
+        int[] tour = new int[cityCount];
+        int subset = allCities;
+        int city = (int) (bestKey & 31);
+        for (int layer = cityCount - 1; layer >= 1; layer--) {
+            tour[layer] = city;
+            int predecessor = layers[layer].getPredecessor(key(subset, city));
+            subset ^= 1 << city;
+            city = predecessor;
+        }
+        return new TourResult(tour, bestCost);
+    }
+}
@@ -0,0 +1,213 @@
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Thread-safe least recently used cache of solved tours, keyed by the set of cities.
+ *
+ * Coordinates are quantized to 2^30 steps across the instance, measured from the lowest x and y,
+ * so the key ignores the order of the cities, a translation of the whole instance and rounding
+ * noise below about a billionth of its extent. GEO instances are not translated, since their
+ * distances depend on the position on the globe. The key is a sum of hashes of the quantized
+ * cities; a hit is confirmed by matching every city to a cached one, which also gives the cached
+ * tour in the numbering of the new request.
+ *
+ * The cache holds at most a number of entries and a number of cities in total, evicting the
+ * least recently used entries first.
+ */
+class ResultCache {
+
+    private static final int RESOLUTION_BITS = 30;
+
+    private final int maxEntries;
+    private final long maxCities;
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long cities;
+
+    /**
+     * The cities of an instance in quantized form, and their order-free hash.
+     */
+    static final class Fingerprint {
+        private final long[] points;
+        private final long hash;
+
+        private Fingerprint(long[] points, long hash) {
+            this.points = points;
+            this.hash = hash;
+        }
+
+        /**
+         * @return The hash of the cities, the same for any order or translation of them.
+         */
+        long hash() {
+            return hash;
+        }
+    }
+
+    /**
+     * A cached tour in the numbering of the request it was found for.
+     */
+    static final class Hit {
+        final int[] tour;
+        final boolean optimal;
+        final String solver;
+
+        private Hit(int[] tour, boolean optimal, String solver) {
+            this.tour = tour;
+            this.optimal = optimal;
+            this.solver = solver;
+        }
+    }
+
+    private static final class Entry {
+        final long[] points;
+        final int[] tour;
+        final boolean optimal;
+        final String solver;
+
+        Entry(long[] points, int[] tour, boolean optimal, String solver) {
+            this.points = points;
+            this.tour = tour;
+            this.optimal = optimal;
+            this.solver = solver;
+        }
+    }
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param maxEntries The most tours kept.
+     * @param maxCities The most cities kept over all tours.
+     */
+    ResultCache(int maxEntries, long maxCities) {
+        this.maxEntries = maxEntries;
+        this.maxCities = maxCities;
+    }
+
+    /**
+     * Computes the key of an instance.
+     *
+     * @param instance The cities.
+     * @return The quantized cities and their hash.
+     */
+    static Fingerprint fingerprint(TspInstance instance) {
+        double[] x = instance.getX();
+        double[] y = instance.getY();
+        int n = x.length;
+        double originX = 0;
+        double originY = 0;
+        double extent = 0;
+        if (instance.getMetric() == TspInstance.Metric.GEO) {
+            for (int i = 0; i < n; i++) {
+                extent = Math.max(extent, Math.max(Math.abs(x[i]), Math.abs(y[i])));
+            }
+        } else {
+            originX = Double.POSITIVE_INFINITY;
+            originY = Double.POSITIVE_INFINITY;
+            double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < n; i++) {
+                originX = Math.min(originX, x[i]);
+                originY = Math.min(originY, y[i]);
+                maxX = Math.max(maxX, x[i]);
+                maxY = Math.max(maxY, y[i]);
+            }
+            extent = Math.max(maxX - originX, maxY - originY);
+        }
+        // A power of two, so that the small change in extent after a translation rarely changes it.
+        double quantum = extent > 0 ? Math.scalb(1.0, Math.getExponent(extent) + 1 - RESOLUTION_BITS) : 1;
+        long[] points = new long[n];
+        long hash = n * 0x9E3779B97F4A7C15L + instance.getMetric().ordinal();
+        for (int i = 0; i < n; i++) {
+            long qx = Math.round((x[i] - originX) / quantum);
+            long qy = Math.round((y[i] - originY) / quantum);
+            points[i] = (qx << 32) | (qy & 0xFFFFFFFFL);
+            hash += mix(points[i]);
+        }
+        return new Fingerprint(points, mix(hash));
+    }
+
+    /**
+     * The finalizer of SplitMix64, which spreads every input bit over the whole result.
+     */
+    static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+        return value ^ (value >>> 31);
+    }
+
+    /**
+     * Looks up the tour of an instance.
+     *
+     * @param key The fingerprint of the instance.
+     * @return The cached tour, renumbered for the instance and starting at city 0, or null if the
+     *         cache holds none for these cities.
+     */
+    Hit get(Fingerprint key) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key.hash);
+        }
+        if (entry == null || entry.points.length != key.points.length) {
+            return null;
+        }
+        int n = key.points.length;
+        // Chains of the cached cities at each quantized position, so duplicates are matched one to one.
+        Map<Long, Integer> first = new HashMap<>(n * 2);
+        int[] next = new int[n];
+        for (int i = n - 1; i >= 0; i--) {
+            Integer previous = first.put(entry.points[i], i);
+            next[i] = previous != null ? previous : -1;
+        }
+        int[] requestCity = new int[n];
+        for (int city = 0; city < n; city++) {
+            Integer cached = first.get(key.points[city]);
+            if (cached == null) {
+                return null;
+            }
+            requestCity[cached] = city;
+            if (next[cached] >= 0) {
+                first.put(key.points[city], next[cached]);
+            } else {
+                first.remove(key.points[city]);
+            }
+        }
+        int zero = 0;
+        while (requestCity[entry.tour[zero]] != 0) {
+            zero++;
+        }
+        int[] tour = new int[n];
+        for (int i = 0; i < n; i++) {
+            tour[i] = requestCity[entry.tour[(zero + i) % n]];
+        }
+        return new Hit(tour, entry.optimal, entry.solver);
+    }
+
+    /**
+     * Stores the tour of an instance, replacing any tour of the same cities.
+     *
+     * @param key The fingerprint of the instance.
+     * @param tour The tour, in the numbering of the instance.
+     * @param optimal Whether the tour is proven optimal.
+     * @param solver The name of the solver that found it.
+     */
+    synchronized void put(Fingerprint key, int[] tour, boolean optimal, String solver) {
+        if (tour.length > maxCities) {
+            return;
+        }
+        Entry old = entries.put(key.hash, new Entry(key.points, tour.clone(), optimal, solver));
+        cities += tour.length - (old != null ? old.tour.length : 0);
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (entries.size() > maxEntries || cities > maxCities) {
+            cities -= eldest.next().tour.length;
+            eldest.remove();
+        }
+    }
+
+    /**
+     * @return The number of tours held.
+     */
+    synchronized int size() {
+        return entries.size();
+    }
+}
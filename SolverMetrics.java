@@ -0,0 +1,240 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import jdk.jfr.FlightRecorder;
+
+/**
+ * Phase timers, counters and gauges of a solve, cheap enough to be always on.
+ *
+ * Phases are timed with one System.nanoTime() call at each end and are also recorded as
+ * {@link PhaseEvent}s for JDK Flight Recorder. Events are only created once Flight Recorder is
+ * running: loading the first event class starts its machinery, which takes about a third of a
+ * second, so runs that do not record never load one. Counters are striped, so threads can add to them
+ * without contention; the solvers count in local variables and add the totals once per climb or
+ * layer, never per move. {@link #toJson()} gives everything in one machine-readable object.
+ * Safe to use from several threads at once.
+ */
+public class SolverMetrics {
+
+    private final String solver;
+    private final Map<String, long[]> phases = new LinkedHashMap<>(); // name -> {count, nanos}
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final Map<String, Double> gauges = new ConcurrentHashMap<>();
+    private final Map<String, String[]> rates = new LinkedHashMap<>(); // gauge -> {counter, phase}
+
+    /**
+     * Creates empty metrics.
+     *
+     * @param solver The name of the solver, reported with every phase.
+     */
+    public SolverMetrics(String solver) {
+        this.solver = solver;
+    }
+
+    /**
+     * A running phase, stopped by closing it.
+     */
+    public final class Phase implements AutoCloseable {
+
+        private final String name;
+        private final long start = System.nanoTime();
+        private final PhaseEvent event;
+
+        private Phase(String name) {
+            this.name = name;
+            if (FlightRecorder.isInitialized()) {
+                event = new PhaseEvent();
+                event.begin();
+            } else {
+                event = null;
+            }
+        }
+
+        /**
+         * Stops the phase and adds its duration to the phase total.
+         */
+        @Override
+        public void close() {
+            long nanos = System.nanoTime() - start;
+            synchronized (phases) {
+                long[] total = phases.computeIfAbsent(name, key -> new long[2]);
+                total[0]++;
+                total[1] += nanos;
+            }
+            if (event != null && event.shouldCommit()) {
+                event.solver = solver;
+                event.phase = name;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Starts timing a phase. Phases of the same name are added up, also when they run on several
+     * threads at once, so their total can exceed the wall-clock time.
+     *
+     * @param name The name of the phase.
+     * @return The running phase, to be closed when it ends, usually with try-with-resources.
+     */
+    public Phase time(String name) {
+        return new Phase(name);
+    }
+
+    /**
+     * Adds to a counter.
+     *
+     * @param name The name of the counter.
+     * @param delta The amount to add.
+     */
+    public void add(String name, long delta) {
+        counters.computeIfAbsent(name, key -> new LongAdder()).add(delta);
+    }
+
+    /**
+     * Raises a gauge to a value if it is lower, keeping the peak.
+     *
+     * @param name The name of the gauge.
+     * @param value The current value.
+     */
+    public void max(String name, double value) {
+        gauges.merge(name, value, Math::max);
+    }
+
+    /**
+     * Reports a counter divided by the time spent in a phase as a gauge, computed when the metrics
+     * are formatted.
+     *
+     * @param gauge The name of the gauge.
+     * @param counter The name of the counter.
+     * @param phase The name of the phase.
+     */
+    public void perSecond(String gauge, String counter, String phase) {
+        synchronized (phases) {
+            rates.put(gauge, new String[] {counter, phase});
+        }
+    }
+
+    /**
+     * @param name The name of a counter.
+     * @return Its value, or 0 if nothing was added to it.
+     */
+    public long getCounter(String name) {
+        LongAdder counter = counters.get(name);
+        return counter != null ? counter.sum() : 0;
+    }
+
+    /**
+     * @param name The name of a phase.
+     * @return The total time spent in it, in seconds.
+     */
+    public double getPhaseSeconds(String name) {
+        synchronized (phases) {
+            long[] total = phases.get(name);
+            return total != null ? total[1] / 1e9 : 0;
+        }
+    }
+
+    /**
+     * Formats the metrics as a JSON object with the members solver, phases (count and milliseconds
+     * per phase, in the order they first ran), counters, and gauges including the rates.
+     *
+     * @return The JSON text.
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n  \"solver\": ").append(quote(solver)).append(",\n  \"phases\": {");
+        Map<String, Double> allGauges = new TreeMap<>(gauges);
+        synchronized (phases) {
+            String separator = "\n";
+            for (Map.Entry<String, long[]> phase : phases.entrySet()) {
+                json.append(separator).append("    ").append(quote(phase.getKey()))
+                        .append(": {\"count\": ").append(phase.getValue()[0])
+                        .append(", \"millis\": ").append(number(phase.getValue()[1] / 1e6)).append('}');
+                separator = ",\n";
+            }
+            for (Map.Entry<String, String[]> rate : rates.entrySet()) {
+                double seconds = getPhaseSeconds(rate.getValue()[1]);
+                if (seconds > 0) {
+                    allGauges.put(rate.getKey(), getCounter(rate.getValue()[0]) / seconds);
+                }
+            }
+        }
+        json.append("\n  },\n  \"counters\": {");
+        String separator = "\n";
+        for (Map.Entry<String, LongAdder> counter : new TreeMap<>(counters).entrySet()) {
+            json.append(separator).append("    ").append(quote(counter.getKey())).append(": ")
+                    .append(counter.getValue().sum());
+            separator = ",\n";
+        }
+        json.append("\n  },\n  \"gauges\": {");
+        separator = "\n";
+        for (Map.Entry<String, Double> gauge : allGauges.entrySet()) {
+            json.append(separator).append("    ").append(quote(gauge.getKey())).append(": ")
+                    .append(number(gauge.getValue()));
+            separator = ",\n";
+        }
+        return json.append("\n  }\n}\n").toString();
+    }
+
+    /**
+     * Writes the JSON form to a file, or to standard error if the path is "-".
+     *
+     * @param target The file.
+     * @throws IOException If the file cannot be written.
+     */
+    public void writeJson(String target) throws IOException {
+        if (target.equals("-")) {
+            System.err.print(toJson());
+        } else {
+            Files.writeString(Path.of(target), toJson());
+        }
+    }
+
+    /**
+     * Begins the event of a climb if Flight Recorder is running.
+     *
+     * @return The event, or null.
+     */
+    static ClimbEvent beginClimb() {
+        if (!FlightRecorder.isInitialized()) {
+            return null;
+        }
+        ClimbEvent event = new ClimbEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Begins the event of a dynaTSP layer if Flight Recorder is running.
+     *
+     * @return The event, or null.
+     */
+    static LayerEvent beginLayer() {
+        if (!FlightRecorder.isInitialized()) {
+            return null;
+        }
+        LayerEvent event = new LayerEvent();
+        event.begin();
+        return event;
+    }
+
+    private static String quote(String text) {
+        return '"' + text.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+    }
+
+    private static String number(double value) {
+        if (!Double.isFinite(value)) {
+            return "null";
+        }
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+}
@@ -0,0 +1,500 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Long-lived solver answering JSON-lines requests on standard input or a local socket.
+ *
+ * One JVM serves any number of instances, so start-up and JIT warm-up are paid once. Every request
+ * is handled on its own virtual thread when the runtime has them (Java 21 and later; they are
+ * looked up reflectively) and on a cached thread pool otherwise, while a semaphore bounds the
+ * solves running at once. Instances up to the exact limit are solved with {@link dynaTSP}, larger
+ * ones with a {@link climbTSP} climb from a greedy tour, and the largest with a
+ * {@link PartitionSolver}. Tours are kept in a {@link ResultCache}, so a repeated instance, also
+ * with its cities reordered or shifted, is answered without solving. A request for cities that are
+ * being solved for another request waits for that solve instead of starting its own.
+ *
+ * A request is one line holding a JSON object:
+ * <pre>
+ * {"id": 7, "points": [[0, 0], [3, 0], [3, 4]], "metric": "euclidean", "solver": "auto", "budget": 500}
+ * </pre>
+ * Only points is required. metric is one of the {@link TspInstance.Metric} names, solver is auto,
+ * exact or heuristic, and budget limits the solve in milliseconds. The answer is one line too:
+ * <pre>
+ * {"id": 7, "solver": "dynaTSP", "optimal": true, "cached": false, "length": 12.0, "millis": 0.4, "tour": [0, 1, 2]}
+ * </pre>
+ * or {"id": 7, "error": "..."} if the request cannot be solved. Answers carry the id of their
+ * request and may come back in a different order than the requests. {"command": "metrics"}
+ * answers with the service's {@link SolverMetrics}.
+ */
+public class SolverService {
+
+    /** The default largest instance solved exactly. */
+    public static final int DEFAULT_EXACT_LIMIT = 12;
+    /** The largest instance the exact solver is asked to solve, whatever the request says. */
+    public static final int MAX_EXACT = 20;
+
+    private static final int PARTITION_THRESHOLD = 200000;
+    private static final int NEIGHBORS = 10;
+    private static final int WARMUP_ROUNDS = 20;
+    private static final long SEED = 0;
+
+    private final int exactLimit;
+    private final int maxIterations;
+    private final int plateauLimit;
+    private final long defaultBudgetMs;
+    private final Semaphore solvers;
+    private final BatchSolver exact;
+    private final ResultCache cache;
+    private final Map<Long, CompletableFuture<Void>> solving = new ConcurrentHashMap<>();
+    private final ExecutorService requests = requestExecutor();
+    private final SolverMetrics metrics = new SolverMetrics("SolverService");
+
+    /**
+     * Creates a service.
+     *
+     * @param threads The number of solves running at the same time.
+     * @param exactLimit The largest instance solved exactly when a request leaves the choice to the service.
+     * @param maxIterations The iteration limit of a climb.
+     * @param plateauLimit The plateau limit of a climb.
+     * @param budgetMs The time limit of a solve in milliseconds if the request sets none, or 0 for none.
+     * @param cacheEntries The most tours kept in the cache, or 0 for no cache.
+     * @param cacheCities The most cities kept in the cache over all tours.
+     */
+    public SolverService(int threads, int exactLimit, int maxIterations, int plateauLimit, long budgetMs,
+                         int cacheEntries, long cacheCities) {
+        if (exactLimit > MAX_EXACT) {
+            throw new IllegalArgumentException("Exact limit must be at most " + MAX_EXACT + ": " + exactLimit);
+        }
+        this.exactLimit = exactLimit;
+        this.maxIterations = maxIterations;
+        this.plateauLimit = plateauLimit;
+        this.defaultBudgetMs = budgetMs;
+        this.solvers = new Semaphore(threads);
+        this.exact = new BatchSolver(threads);
+        this.cache = cacheEntries > 0 ? new ResultCache(cacheEntries, cacheCities) : null;
+    }
+
+    /**
+     * Entry point.
+     *
+     * @param args optionally --port P (listen on the loopback interface instead of standard input),
+     *             --threads T (solves at the same time, default all cores),
+     *             --exact-limit N (largest instance solved exactly, default 12, at most 20),
+     *             --iterations I and --plateau P (limits of a climb, default 10000000 and 100000),
+     *             --budget MS (time limit of a solve unless the request sets one),
+     *             --cache-size N (tours kept, default 1024, 0 for no cache),
+     *             --cache-cities N (cities kept over all tours, default 10000000)
+     *             and --no-warmup (answer the first requests with cold code)
+     */
+    public static void main(String[] args) {
+        int port = -1;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int exactLimit = DEFAULT_EXACT_LIMIT;
+        int maxIterations = 10000000;
+        int plateauLimit = 100000;
+        long budgetMs = 0;
+        int cacheEntries = 1024;
+        long cacheCities = 10000000;
+        boolean warmup = true;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--port") && i + 1 < args.length) {
+                port = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--threads") && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--exact-limit") && i + 1 < args.length) {
+                exactLimit = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--iterations") && i + 1 < args.length) {
+                maxIterations = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--plateau") && i + 1 < args.length) {
+                plateauLimit = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--budget") && i + 1 < args.length) {
+                budgetMs = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--cache-size") && i + 1 < args.length) {
+                cacheEntries = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--cache-cities") && i + 1 < args.length) {
+                cacheCities = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--no-warmup")) {
+                warmup = false;
+            } else {
+                System.err.println("Usage: java SolverService [--port P] [--threads T] [--exact-limit N] "
+                        + "[--iterations I] [--plateau P] [--budget MS] [--cache-size N] [--cache-cities N] "
+                        + "[--no-warmup]");
+                return;
+            }
+        }
+
+        SolverService service;
+        try {
+            service = new SolverService(threads, exactLimit, maxIterations, plateauLimit, budgetMs,
+                    cacheEntries, cacheCities);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return;
+        }
+        if (warmup) {
+            service.warmUp();
+        }
+        try {
+            if (port >= 0) {
+                service.listen(port);
+            } else {
+                service.serve(System.in, System.out);
+            }
+        } catch (IOException e) {
+            System.err.println("Service failed: " + e.getMessage());
+        } finally {
+            service.close();
+        }
+    }
+
+    /**
+     * Creates a virtual thread per task executor if the runtime has one, and a cached thread pool
+     * otherwise.
+     *
+     * @return The executor requests are handled on.
+     */
+    private static ExecutorService requestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /**
+     * Solves a few random instances of every kind, so the first requests already run compiled code.
+     * Nothing is cached or counted.
+     */
+    void warmUp() {
+        SplittableRandom random = new SplittableRandom(SEED);
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            int n = round % 2 == 0 ? Math.max(exactLimit, 4) : 2000;
+            double[] x = new double[n];
+            double[] y = new double[n];
+            for (int i = 0; i < n; i++) {
+                x[i] = random.nextDouble(1000);
+                y[i] = random.nextDouble(1000);
+            }
+            TspInstance instance = new TspInstance("warmup", x, y, TspInstance.Metric.EUCLIDEAN);
+            if (n <= exactLimit) {
+                solveExactly(instance);
+            } else {
+                climb(instance, 0);
+            }
+        }
+    }
+
+    /**
+     * Accepts connections on the loopback interface until the process is stopped. Each connection
+     * is served like standard input, on its own thread.
+     *
+     * @param port The port, or 0 for any free port.
+     * @throws IOException If the port cannot be opened.
+     */
+    void listen(int port) throws IOException {
+        try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            System.err.println("Listening on " + server.getLocalSocketAddress());
+            while (true) {
+                Socket socket = server.accept();
+                // Answers are written as soon as they are ready; do not hold them back for more data.
+                socket.setTcpNoDelay(true);
+                requests.execute(() -> {
+                    try (socket) {
+                        serve(socket.getInputStream(), socket.getOutputStream());
+                    } catch (IOException e) {
+                        // The client went away; its unanswered requests are dropped.
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Answers the requests read from a stream, one line each, until the stream ends and every
+     * request has been answered.
+     *
+     * @param input The requests.
+     * @param output Where the answers are written.
+     * @throws IOException If the requests cannot be read.
+     */
+    void serve(InputStream input, OutputStream output) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        Phaser pending = new Phaser(1);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isBlank()) {
+                continue;
+            }
+            String request = line;
+            pending.register();
+            requests.execute(() -> {
+                try {
+                    String answer = handle(request);
+                    synchronized (writer) {
+                        writer.write(answer);
+                        writer.write('\n');
+                        writer.flush();
+                    }
+                } catch (IOException e) {
+                    // The reader of the answers is gone; nothing to report to.
+                } finally {
+                    pending.arriveAndDeregister();
+                }
+            });
+        }
+        pending.arriveAndAwaitAdvance();
+    }
+
+    /**
+     * Answers one request.
+     *
+     * @param line The request, a JSON object.
+     * @return The answer, a JSON object on one line.
+     */
+    @SuppressWarnings("try")
+    String handle(String line) {
+        long start = System.nanoTime();
+        metrics.add("requests", 1);
+        Object id = null;
+        try {
+            Map<String, Object> request = Json.parseObject(line);
+            id = request.get("id");
+            if ("metrics".equals(request.get("command"))) {
+                return "{\"id\": " + Json.format(id) + ", \"metrics\": "
+                        + metrics.toJson().replaceAll("\\s*\n\\s*", " ").trim() + "}";
+            }
+            TspInstance instance = instance(request);
+            String mode = request.containsKey("solver") ? String.valueOf(request.get("solver")) : "auto";
+            long budgetMs = request.containsKey("budget") ? number(request.get("budget"), "budget") : defaultBudgetMs;
+            int n = instance.size();
+            boolean solveExactly;
+            switch (mode) {
+                case "auto":
+                    solveExactly = n <= exactLimit;
+                    break;
+                case "exact":
+                    if (n > MAX_EXACT) {
+                        throw new IllegalArgumentException("Exact solves are limited to " + MAX_EXACT + " cities");
+                    }
+                    solveExactly = true;
+                    break;
+                case "heuristic":
+                    solveExactly = false;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown solver: " + mode + " (expected auto, exact or heuristic)");
+            }
+
+            ResultCache.Fingerprint key = cache != null ? ResultCache.fingerprint(instance) : null;
+            ResultCache.Hit hit = key != null ? cache.get(key) : null;
+            CompletableFuture<Void> claim = null;
+            if (key != null && !usable(hit, solveExactly)) {
+                claim = new CompletableFuture<>();
+                CompletableFuture<Void> running = solving.putIfAbsent(key.hash(), claim);
+                if (running != null) {
+                    claim = null;
+                    running.join();
+                    hit = cache.get(key);
+                }
+            }
+            if (usable(hit, solveExactly)) {
+                metrics.add("cache.hits", 1);
+                return answer(id, hit.solver, hit.optimal, true, hit.tour, instance, start);
+            }
+            metrics.add("cache.misses", 1);
+
+            try {
+                TourResult result;
+                String solver;
+                solvers.acquire();
+                try {
+                    if (solveExactly) {
+                        solver = "dynaTSP";
+                        try (SolverMetrics.Phase phase = metrics.time("exact")) {
+                            result = solveExactly(instance);
+                        }
+                    } else {
+                        solver = n >= PARTITION_THRESHOLD ? "PartitionSolver" : "climbTSP";
+                        try (SolverMetrics.Phase phase = metrics.time("heuristic")) {
+                            result = climb(instance, budgetMs);
+                        }
+                    }
+                } finally {
+                    solvers.release();
+                }
+                if (result == null) {
+                    throw new IllegalArgumentException("No tour found");
+                }
+                int[] tour = TourResult.startAtZero(result.getTour());
+                if (key != null) {
+                    cache.put(key, tour, solveExactly, solver);
+                }
+                return answer(id, solver, solveExactly, false, tour, instance, start);
+            } finally {
+                if (claim != null) {
+                    // Waiting requests find the tour in the cache, or solve on their own if there is none.
+                    release(key, claim);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            metrics.add("errors", 1);
+            return "{\"id\": " + Json.format(id) + ", \"error\": " + Json.quote(String.valueOf(e.getMessage())) + "}";
+        } catch (RuntimeException | StackOverflowError e) {
+            // Every request gets an answer, or its client would wait for ever.
+            metrics.add("errors", 1);
+            return "{\"id\": " + Json.format(id) + ", \"error\": " + Json.quote("Internal error: " + e) + "}";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "{\"id\": " + Json.format(id) + ", \"error\": \"Interrupted\"}";
+        }
+    }
+
+    private static boolean usable(ResultCache.Hit hit, boolean solveExactly) {
+        return hit != null && (hit.optimal || !solveExactly);
+    }
+
+    /**
+     * Ends the claim on solving a set of cities and wakes the requests waiting for it.
+     */
+    private void release(ResultCache.Fingerprint key, CompletableFuture<Void> claim) {
+        solving.remove(key.hash(), claim);
+        claim.complete(null);
+    }
+
+    /**
+     * Builds the instance of a request.
+     *
+     * @param request The members of the request.
+     * @return The cities.
+     * @throws IllegalArgumentException If the points or the metric are missing or malformed.
+     */
+    private static TspInstance instance(Map<String, Object> request) {
+        Object points = request.get("points");
+        if (!(points instanceof List) || ((List<?>) points).isEmpty()) {
+            throw new IllegalArgumentException("Expected points as a non-empty array of [x, y] pairs");
+        }
+        List<?> list = (List<?>) points;
+        int n = list.size();
+        double[] x = new double[n];
+        double[] y = new double[n];
+        for (int i = 0; i < n; i++) {
+            Object point = list.get(i);
+            if (!(point instanceof List) || ((List<?>) point).size() != 2
+                    || !(((List<?>) point).get(0) instanceof Double) || !(((List<?>) point).get(1) instanceof Double)) {
+                throw new IllegalArgumentException("Point " + i + " is not an [x, y] pair of numbers");
+            }
+            x[i] = (Double) ((List<?>) point).get(0);
+            y[i] = (Double) ((List<?>) point).get(1);
+        }
+        TspInstance.Metric metric = TspInstance.Metric.EUCLIDEAN;
+        if (request.containsKey("metric")) {
+            try {
+                metric = TspInstance.Metric.valueOf(String.valueOf(request.get("metric")).toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown metric: " + request.get("metric"));
+            }
+        }
+        return new TspInstance("request", x, y, metric);
+    }
+
+    private static long number(Object value, String name) {
+        if (!(value instanceof Double) || (Double) value < 0) {
+            throw new IllegalArgumentException("Expected " + name + " as a number of milliseconds");
+        }
+        return ((Double) value).longValue();
+    }
+
+    /**
+     * Solves an instance with dynaTSP, using a pooled table.
+     */
+    private TourResult solveExactly(TspInstance instance) {
+        double[][] distances = dynaTSP.calculateDistances(DistanceOracle.create(instance, "dense"));
+        return exact.solve(distances);
+    }
+
+    /**
+     * Solves an instance with a greedy start and one climb, or with a PartitionSolver if it is large.
+     */
+    private TourResult climb(TspInstance instance, long budgetMs) {
+        int n = instance.size();
+        if (n >= PARTITION_THRESHOLD) {
+            PartitionSolver partitions = new PartitionSolver(instance, PartitionSolver.DEFAULT_CELL_SIZE,
+                    maxIterations, plateauLimit, NEIGHBORS);
+            partitions.setSeed(SEED);
+            return partitions.solve(1, budgetMs);
+        }
+        climbTSP climber = new climbTSP(instance, maxIterations, plateauLimit, NEIGHBORS);
+        if (n > 4) {
+            climber.setInitialTour("greedy");
+        }
+        long deadline = budgetMs > 0 ? System.nanoTime() + budgetMs * 1000000L : Long.MAX_VALUE;
+        return climber.solve(new SplittableRandom(SEED), new AtomicBoolean(), deadline, null);
+    }
+
+    /**
+     * Formats the answer to a solved request. The length is measured on the request's own
+     * coordinates, which may differ from a cached instance below the cache's resolution, in
+     * double precision like the solvers' own costs.
+     */
+    private static String answer(Object id, String solver, boolean optimal, boolean cached, int[] tour,
+                                 TspInstance instance, long start) {
+        double length = 0;
+        int last = tour[tour.length - 1];
+        for (int city : tour) {
+            length += last == city ? 0 : instance.distance(last, city);
+            last = city;
+        }
+        StringBuilder answer = new StringBuilder(64 + tour.length * 7);
+        answer.append("{\"id\": ").append(Json.format(id))
+                .append(", \"solver\": ").append(Json.quote(solver))
+                .append(", \"optimal\": ").append(optimal)
+                .append(", \"cached\": ").append(cached)
+                .append(", \"length\": ").append(length)
+                .append(", \"millis\": ").append(String.format(Locale.ROOT, "%.3f", (System.nanoTime() - start) / 1e6))
+                .append(", \"tour\": [");
+        for (int i = 0; i < tour.length; i++) {
+            if (i > 0) {
+                answer.append(", ");
+            }
+            answer.append(tour[i]);
+        }
+        return answer.append("]}").toString();
+    }
+
+    /**
+     * @return The request, cache and phase counters of the service.
+     */
+    public SolverMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Stops the request threads once the requests being handled are answered.
+     */
+    public void close() {
+        requests.shutdown();
+        exact.close();
+    }
+}
@@ -0,0 +1,265 @@
+import java.util.stream.IntStream;
+
+/**
+ * Uniform grid over the cities, used to find the nearest neighbours of every city without
+ * comparing all pairs. Cities are bucketed so that each cell holds about two of them, and a
+ * query searches rings of cells outwards from the city's own cell until no closer city can exist.
+ */
+class SpatialGrid {
+
+    private static final double CITIES_PER_CELL = 2.0;
+
+    private final double[] x;
+    private final double[] y;
+    private final double minX;
+    private final double minY;
+    private final double cellSize;
+    private final int columns;
+    private final int rows;
+    private final int[] cellStart;
+    private final int[] cellCities;
+
+    /**
+     * Builds the grid.
+     *
+     * @param x The x coordinate of every city.
+     * @param y The y coordinate of every city.
+     */
+    SpatialGrid(double[] x, double[] y) {
+        this.x = x;
+        this.y = y;
+        int cityCount = x.length;
+        double lowX = Double.POSITIVE_INFINITY, lowY = Double.POSITIVE_INFINITY;
+        double highX = Double.NEGATIVE_INFINITY, highY = Double.NEGATIVE_INFINITY;
+        for (int city = 0; city < cityCount; city++) {
+            lowX = Math.min(lowX, x[city]);
+            lowY = Math.min(lowY, y[city]);
+            highX = Math.max(highX, x[city]);
+            highY = Math.max(highY, y[city]);
+        }
+        minX = lowX;
+        minY = lowY;
+        double width = Math.max(highX - lowX, 0);
+        double height = Math.max(highY - lowY, 0);
+        double cells = Math.max(1, cityCount / CITIES_PER_CELL);
+        // Square cells covering the bounding box, but never more cells along one side than there
+        // are cells in total, which keeps long thin instances from producing huge grids.
+        double size = Math.max(Math.sqrt(width * height / cells), Math.max(width, height) / cells);
+        cellSize = size > 0 ? size : 1;
+        columns = (int) (width / cellSize) + 1;
+        rows = (int) (height / cellSize) + 1;
+
+        // Counting sort of the cities by cell.
+        cellStart = new int[columns * rows + 1];
+        int[] cellOf = new int[cityCount];
+        for (int city = 0; city < cityCount; city++) {
+            cellOf[city] = cell(column(x[city]), row(y[city]));
+            cellStart[cellOf[city] + 1]++;
+        }
+        for (int cell = 0; cell < columns * rows; cell++) {
+            cellStart[cell + 1] += cellStart[cell];
+        }
+        cellCities = new int[cityCount];
+        int[] fill = cellStart.clone();
+        for (int city = 0; city < cityCount; city++) {
+            cellCities[fill[cellOf[city]]++] = city;
+        }
+    }
+
+    private int column(double cityX) {
+        return Math.min(columns - 1, (int) ((cityX - minX) / cellSize));
+    }
+
+    private int row(double cityY) {
+        return Math.min(rows - 1, (int) ((cityY - minY) / cellSize));
+    }
+
+    private int cell(int column, int row) {
+        return row * columns + column;
+    }
+
+    /**
+     * Finds the k nearest neighbours of every city, in parallel.
+     *
+     * @param k The number of neighbours per city, less than the number of cities.
+     * @return A flat array where entries [city * k, city * k + k) are the neighbours of the city,
+     *         closest first.
+     */
+    int[] nearestNeighbors(int k) {
+        int[] neighbors = new int[x.length * k];
+        IntStream.range(0, x.length).parallel()
+                .forEach(city -> nearest(city, k, neighbors, city * k));
+        return neighbors;
+    }
+
+    /**
+     * Finds the k nearest neighbours of one city by searching square rings of cells around it.
+     * After ring r every unseen city is at least r cells away, so the search stops once the k-th
+     * closest city found is nearer than that.
+     *
+     * @param city The city.
+     * @param k The number of neighbours to find.
+     * @param result The array the neighbours are written to, closest first.
+     * @param offset The position of the first neighbour in the result.
+     */
+    private void nearest(int city, int k, int[] result, int offset) {
+        double cityX = x[city];
+        double cityY = y[city];
+        int column = column(cityX);
+        int row = row(cityY);
+        double[] found = new double[k];
+        int count = 0;
+        int maxRing = Math.max(columns, rows);
+
+        for (int ring = 0; ring <= maxRing; ring++) {
+            for (int r = row - ring; r <= row + ring; r++) {
+                if (r < 0 || r >= rows) {
+                    continue;
+                }
+                boolean edgeRow = r == row - ring || r == row + ring;
+                int step = edgeRow ? 1 : 2 * ring;
+                for (int c = column - ring; c <= column + ring; c += Math.max(step, 1)) {
+                    if (c < 0 || c >= columns) {
+                        continue;
+                    }
+                    int cell = cell(c, r);
+                    for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                        int other = cellCities[i];
+                        if (other == city) {
+                            continue;
+                        }
+                        double dx = x[other] - cityX;
+                        double dy = y[other] - cityY;
+                        double squared = dx * dx + dy * dy;
+                        if (count == k && squared >= found[k - 1]) {
+                            continue;
+                        }
+                        // Insertion into the sorted list of the closest cities so far.
+                        int slot = count < k ? count++ : k - 1;
+                        while (slot > 0 && found[slot - 1] > squared) {
+                            found[slot] = found[slot - 1];
+                            result[offset + slot] = result[offset + slot - 1];
+                            slot--;
+                        }
+                        found[slot] = squared;
+                        result[offset + slot] = other;
+                    }
+                }
+            }
+            double reach = ring * cellSize;
+            if (count == k && found[k - 1] <= reach * reach) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Builds a tour by always moving to the nearest city not yet visited.
+     *
+     * Visited cities are removed from a copy of the grid, so each step searches rings of cells
+     * around the current city as {@link #nearestNeighbors} does. Towards the end few cities are
+     * left and rings get emptier; once a search has looked at more cells than there are cities
+     * left, it checks the remaining cities directly instead.
+     *
+     * @param start The first city of the tour.
+     * @return The cities in visiting order.
+     */
+    int[] nearestNeighborTour(int start) {
+        int cityCount = x.length;
+        int cellCount = columns * rows;
+        int[] cities = cellCities.clone();
+        int[] liveEnd = new int[cellCount];
+        int[] slotOf = new int[cityCount];
+        for (int cell = 0; cell < cellCount; cell++) {
+            liveEnd[cell] = cellStart[cell + 1];
+            for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                slotOf[cities[i]] = i;
+            }
+        }
+        // All unvisited cities, for the direct search at the end.
+        int[] remaining = new int[cityCount];
+        int[] remainingSlot = new int[cityCount];
+        for (int city = 0; city < cityCount; city++) {
+            remaining[city] = city;
+            remainingSlot[city] = city;
+        }
+        int remainingCount = cityCount;
+
+        int[] tour = new int[cityCount];
+        int current = start;
+        for (int step = 0; step < cityCount; step++) {
+            tour[step] = current;
+            // Remove the city from its cell and from the list of unvisited cities.
+            int cell = cell(column(x[current]), row(y[current]));
+            int last = cities[--liveEnd[cell]];
+            cities[slotOf[current]] = last;
+            slotOf[last] = slotOf[current];
+            int moved = remaining[--remainingCount];
+            remaining[remainingSlot[current]] = moved;
+            remainingSlot[moved] = remainingSlot[current];
+            if (remainingCount > 0) {
+                current = nearestUnvisited(current, cities, liveEnd, remaining, remainingCount);
+            }
+        }
+        return tour;
+    }
+
+    /**
+     * Finds the nearest city still in the grid.
+     */
+    private int nearestUnvisited(int city, int[] cities, int[] liveEnd, int[] remaining, int remainingCount) {
+        double cityX = x[city];
+        double cityY = y[city];
+        int column = column(cityX);
+        int row = row(cityY);
+        int best = -1;
+        double bestSquared = Double.POSITIVE_INFINITY;
+        int cellsSearched = 0;
+        int maxRing = Math.max(columns, rows);
+
+        for (int ring = 0; ring <= maxRing; ring++) {
+            if (cellsSearched > remainingCount) {
+                for (int i = 0; i < remainingCount; i++) {
+                    int other = remaining[i];
+                    double dx = x[other] - cityX;
+                    double dy = y[other] - cityY;
+                    double squared = dx * dx + dy * dy;
+                    if (squared < bestSquared) {
+                        bestSquared = squared;
+                        best = other;
+                    }
+                }
+                return best;
+            }
+            for (int r = row - ring; r <= row + ring; r++) {
+                if (r < 0 || r >= rows) {
+                    continue;
+                }
+                boolean edgeRow = r == row - ring || r == row + ring;
+                int step = edgeRow ? 1 : 2 * ring;
+                for (int c = column - ring; c <= column + ring; c += Math.max(step, 1)) {
+                    if (c < 0 || c >= columns) {
+                        continue;
+                    }
+                    int cell = cell(c, r);
+                    cellsSearched++;
+                    for (int i = cellStart[cell]; i < liveEnd[cell]; i++) {
+                        int other = cities[i];
+                        double dx = x[other] - cityX;
+                        double dy = y[other] - cityY;
+                        double squared = dx * dx + dy * dy;
+                        if (squared < bestSquared) {
+                            bestSquared = squared;
+                            best = other;
+                        }
+                    }
+                }
+            }
+            double reach = ring * cellSize;
+            if (best != -1 && bestSquared <= reach * reach) {
+                return best;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,179 @@
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from a long key to a cost and a predecessor, stored in primitive
+ * arrays so that millions of states cost no objects. Key 0 marks an empty slot and cannot be stored.
+ */
+class StateMap {
+
+    private static final double MAX_LOAD = 0.5;
+
+    private long[] keys;
+    private double[] costs;
+    private byte[] predecessors;
+    private int size;
+    private int mask;
+
+    /**
+     * Creates an empty map.
+     *
+     * @param expectedSize The number of entries the map should hold without growing.
+     */
+    StateMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, (int) (expectedSize / MAX_LOAD)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        costs = new double[capacity];
+        predecessors = new byte[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Mixes the bits of a key so that keys differing only in high bits spread over the table.
+     *
+     * @param key The key.
+     * @return The hash of the key.
+     */
+    private static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    /**
+     * Finds the slot holding a key, or the empty slot where it would be inserted.
+     *
+     * @param key The key.
+     * @return The slot index.
+     */
+    private int slot(long key) {
+        int slot = hash(key) & mask;
+        while (keys[slot] != 0 && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Stores a cost and predecessor unless the key already has a cost that is at least as low.
+     *
+     * @param key The key, which must not be 0.
+     * @param cost The cost.
+     * @param predecessor The predecessor.
+     * @return true if the entry was stored; false otherwise.
+     */
+    boolean putIfLower(long key, double cost, int predecessor) {
+        int slot = slot(key);
+        if (keys[slot] == key) {
+            if (cost >= costs[slot]) {
+                return false;
+            }
+        } else {
+            if (size + 1 > keys.length * MAX_LOAD) {
+                grow();
+                slot = slot(key);
+            }
+            keys[slot] = key;
+            size++;
+        }
+        costs[slot] = cost;
+        predecessors[slot] = (byte) predecessor;
+        return true;
+    }
+
+    /**
+     * Gets the cost stored for a key.
+     *
+     * @param key The key.
+     * @return The cost, or NaN if the key is absent.
+     */
+    double getCost(long key) {
+        int slot = slot(key);
+        return keys[slot] == key ? costs[slot] : Double.NaN;
+    }
+
+    /**
+     * Gets the predecessor stored for a key.
+     *
+     * @param key The key.
+     * @return The predecessor, or -1 if the key is absent.
+     */
+    int getPredecessor(long key) {
+        int slot = slot(key);
+        return keys[slot] == key ? predecessors[slot] : -1;
+    }
+
+    /**
+     * Gets the number of entries.
+     *
+     * @return The number of keys stored.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Gets the number of slots, for iterating with {@link #keyAt}.
+     *
+     * @return The capacity of the map.
+     */
+    int capacity() {
+        return keys.length;
+    }
+
+    /**
+     * Gets the key in a slot.
+     *
+     * @param slot The slot index.
+     * @return The key, or 0 if the slot is empty.
+     */
+    long keyAt(int slot) {
+        return keys[slot];
+    }
+
+    /**
+     * Gets the cost in a slot.
+     *
+     * @param slot The slot index, which must not be empty.
+     * @return The cost.
+     */
+    double costAt(int slot) {
+        return costs[slot];
+    }
+
+    /**
+     * Estimates the memory used by the map.
+     *
+     * @return The size of the arrays in bytes.
+     */
+    long memoryBytes() {
+        return (long) keys.length * (Long.BYTES + Double.BYTES + Byte.BYTES);
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        double[] oldCosts = costs;
+        byte[] oldPredecessors = predecessors;
+        allocate(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int slot = slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                costs[slot] = oldCosts[i];
+                predecessors[slot] = oldPredecessors[i];
+            }
+        }
+    }
+
+    /**
+     * Removes every entry, keeping the allocated arrays.
+     */
+    void clear() {
+        Arrays.fill(keys, 0);
+        size = 0;
+    }
+}
@@ -0,0 +1,21 @@
+/**
+ * Alternative inner loop for dynaTSP that relaxes every city of a subset directly on the arrays
+ * of a {@link CompactTable}. Implementations must give exactly the same costs and predecessors as
+ * dynaTSP's own processSubset, including how ties are broken.
+ */
+interface SubsetKernel {
+
+    /**
+     * Computes the table entries of every city (other than city 0) in a subset.
+     *
+     * @param costs The costs of a compact double table.
+     * @param predecessors The predecessors of the same table.
+     * @param transposed transposed[to][from - 1] holds the distance from city "from" to city "to",
+     *                   so that the distances into one city are contiguous.
+     * @param distancesFromStart distancesFromStart[to] holds the distance from city 0 to city "to".
+     * @param rowLength The number of cities other than city 0.
+     * @param subset The subset to process, which must contain city 0.
+     */
+    void processSubset(double[] costs, byte[] predecessors, double[][] transposed,
+                       double[] distancesFromStart, int rowLength, int subset);
+}
@@ -0,0 +1,60 @@
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread-safe pool of compact tables, kept per number of cities, so that solving many
+ * instances of similar size does not allocate a new table for every instance.
+ */
+class TablePool {
+
+    private final int maxIdlePerSize;
+    private final Map<Integer, Queue<TspTable>> idle = new ConcurrentHashMap<>();
+    private final Map<Integer, AtomicInteger> idleCounts = new ConcurrentHashMap<>();
+
+    /**
+     * Creates an empty pool.
+     *
+     * @param maxIdlePerSize The most tables of one size kept for reuse; extra tables are dropped.
+     */
+    TablePool(int maxIdlePerSize) {
+        this.maxIdlePerSize = maxIdlePerSize;
+    }
+
+    /**
+     * Takes a table for the given number of cities out of the pool, allocating one if none is idle.
+     *
+     * @param cityCount The number of cities.
+     * @return A table the caller has exclusive use of until it is released.
+     */
+    TspTable borrow(int cityCount) {
+        TspTable table = queue(cityCount).poll();
+        if (table == null) {
+            return new CompactTable(cityCount);
+        }
+        idleCounts.get(cityCount).decrementAndGet();
+        return table;
+    }
+
+    /**
+     * Returns a table to the pool.
+     *
+     * @param cityCount The number of cities the table was borrowed for.
+     * @param table The table, which the caller must not use any more.
+     */
+    void release(int cityCount, TspTable table) {
+        Queue<TspTable> queue = queue(cityCount);
+        if (idleCounts.get(cityCount).incrementAndGet() <= maxIdlePerSize) {
+            queue.offer(table);
+        } else {
+            idleCounts.get(cityCount).decrementAndGet();
+        }
+    }
+
+    private Queue<TspTable> queue(int cityCount) {
+        idleCounts.computeIfAbsent(cityCount, size -> new AtomicInteger());
+        return idle.computeIfAbsent(cityCount, size -> new ConcurrentLinkedQueue<>());
+    }
+}
@@ -0,0 +1,57 @@
+/**
+ * A cyclic tour that local search moves can be applied to.
+ *
+ * "Forward" is the direction {@link #next} follows. Implementations may reverse the rest of the
+ * cycle instead of the requested path, since that gives the same cycle, but must then flip which
+ * direction is forward so that the requested path reads reversed afterwards.
+ */
+interface Tour {
+
+    /**
+     * Gets the number of cities in the tour.
+     *
+     * @return The number of cities.
+     */
+    int size();
+
+    /**
+     * Gets the city visited after the given one.
+     *
+     * @param city The city.
+     * @return Its successor.
+     */
+    int next(int city);
+
+    /**
+     * Gets the city visited before the given one.
+     *
+     * @param city The city.
+     * @return Its predecessor.
+     */
+    int prev(int city);
+
+    /**
+     * Tells whether a city lies on the forward path from one city to another, ends included.
+     *
+     * @param from The first city of the path.
+     * @param city The city to look for.
+     * @param to The last city of the path.
+     * @return true if the city is on the path; false otherwise.
+     */
+    boolean between(int from, int city, int to);
+
+    /**
+     * Reverses the forward path from one city to another, ends included.
+     *
+     * @param from The first city of the path.
+     * @param to The last city of the path.
+     */
+    void reverse(int from, int to);
+
+    /**
+     * Lists the cities in forward order, starting at city 0.
+     *
+     * @return The tour.
+     */
+    int[] toArray();
+}
@@ -0,0 +1,74 @@
+import java.util.StringJoiner;
+
+/**
+ * A tour found by one of the solvers, together with its length.
+ */
+public class TourResult {
+
+    private final int[] tour;
+    private final double cost;
+
+    /**
+     * Creates a result.
+     *
+     * @param tour The cities in the order they are visited, starting at city 0.
+     *             The return to city 0 is implied.
+     * @param cost The total length of the tour, including the return to city 0.
+     */
+    public TourResult(int[] tour, double cost) {
+        this.tour = tour;
+        this.cost = cost;
+    }
+
+    /**
+     * Gets the cities in the order they are visited, starting at city 0.
+     *
+     * @return The tour, without the return to city 0.
+     */
+    public int[] getTour() {
+        return tour;
+    }
+
+    /**
+     * Gets the total length of the tour.
+     *
+     * @return The tour length, including the return to city 0.
+     */
+    public double getCost() {
+        return cost;
+    }
+
+    /**
+     * Rotates a tour so that it starts at city 0.
+     *
+     * @param tour The cities in visiting order, city 0 among them.
+     * @return A new array with the same cycle, starting at city 0.
+     */
+    static int[] startAtZero(int[] tour) {
+        int zero = 0;
+        while (tour[zero] != 0) {
+            zero++;
+        }
+        int[] rotated = new int[tour.length];
+        System.arraycopy(tour, zero, rotated, 0, tour.length - zero);
+        System.arraycopy(tour, 0, rotated, tour.length - zero, zero);
+        return rotated;
+    }
+
+    /**
+     * Formats the tour as a list that ends with the return to city 0.
+     *
+     * @return The tour, for example [0, 2, 1, 0].
+     */
+    @Override
+    public String toString() {
+        StringJoiner joiner = new StringJoiner(", ", "[", "]");
+        for (int city : tour) {
+            joiner.add(Integer.toString(city));
+        }
+        if (tour.length > 0) {
+            joiner.add(Integer.toString(tour[0]));
+        }
+        return joiner.toString();
+    }
+}
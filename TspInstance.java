@@ -0,0 +1,134 @@
+/**
+ * The cities of a problem instance and how to measure the distance between them.
+ * Coordinates are kept in two primitive arrays, one per axis.
+ */
+public class TspInstance {
+
+    /**
+     * How distances are measured. EUCLIDEAN is the exact straight-line distance used by the
+     * plain input format; the others are the TSPLIB edge weight types of the same name.
+     */
+    public enum Metric {
+        /** Straight-line distance. */
+        EUCLIDEAN,
+        /** Straight-line distance rounded to the nearest integer. */
+        EUC_2D,
+        /** Straight-line distance rounded up. */
+        CEIL_2D,
+        /** Pseudo-Euclidean distance of the att48 and att532 instances. */
+        ATT,
+        /** Great-circle distance in kilometres, coordinates in degrees and minutes. */
+        GEO
+    }
+
+    private static final double GEO_PI = 3.141592;
+    private static final double EARTH_RADIUS = 6378.388;
+
+    private final String name;
+    private final double[] x;
+    private final double[] y;
+    private final Metric metric;
+    private double[] latitude;
+    private double[] longitude;
+
+    /**
+     * Creates an instance. The arrays are not copied.
+     *
+     * @param name The name of the instance.
+     * @param x The x coordinate of every city (latitude for GEO).
+     * @param y The y coordinate of every city (longitude for GEO).
+     * @param metric How distances are measured.
+     */
+    public TspInstance(String name, double[] x, double[] y, Metric metric) {
+        if (x.length != y.length) {
+            throw new IllegalArgumentException("Coordinate arrays differ in length: " + x.length + " and " + y.length);
+        }
+        this.name = name;
+        this.x = x;
+        this.y = y;
+        this.metric = metric;
+        if (metric == Metric.GEO) {
+            latitude = new double[x.length];
+            longitude = new double[x.length];
+            for (int i = 0; i < x.length; i++) {
+                latitude[i] = geoRadians(x[i]);
+                longitude[i] = geoRadians(y[i]);
+            }
+        }
+    }
+
+    /**
+     * @return The name of the instance.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return The number of cities.
+     */
+    public int size() {
+        return x.length;
+    }
+
+    /**
+     * @return How distances are measured.
+     */
+    public Metric getMetric() {
+        return metric;
+    }
+
+    /**
+     * @return The x coordinate of every city. The array is shared, not copied.
+     */
+    public double[] getX() {
+        return x;
+    }
+
+    /**
+     * @return The y coordinate of every city. The array is shared, not copied.
+     */
+    public double[] getY() {
+        return y;
+    }
+
+    /**
+     * Measures the distance between two cities with the instance's metric.
+     *
+     * @param i The first city.
+     * @param j The second city.
+     * @return The distance.
+     */
+    public double distance(int i, int j) {
+        double dx = x[i] - x[j];
+        double dy = y[i] - y[j];
+        switch (metric) {
+            case EUC_2D:
+                return (int) (Math.sqrt(dx * dx + dy * dy) + 0.5);
+            case CEIL_2D:
+                return Math.ceil(Math.sqrt(dx * dx + dy * dy));
+            case ATT: {
+                double r = Math.sqrt((dx * dx + dy * dy) / 10.0);
+                int t = (int) (r + 0.5);
+                return t < r ? t + 1 : t;
+            }
+            case GEO: {
+                double q1 = Math.cos(longitude[i] - longitude[j]);
+                double q2 = Math.cos(latitude[i] - latitude[j]);
+                double q3 = Math.cos(latitude[i] + latitude[j]);
+                return (int) (EARTH_RADIUS * Math.acos(0.5 * ((1.0 + q1) * q2 - (1.0 - q1) * q3)) + 1.0);
+            }
+            default:
+                return Geometry.distance(x, y, i, j);
+        }
+    }
+
+    /**
+     * Converts a TSPLIB GEO coordinate, degrees before the point and minutes after it, to radians.
+     */
+    private static double geoRadians(double value) {
+        int degrees = (int) value;
+        double minutes = value - degrees;
+        return GEO_PI * (degrees + 5.0 * minutes / 3.0) / 180.0;
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * Storage for the dynamic programming table used by dynaTSP.
+ * An entry holds the cheapest known cost of a path that starts at city 0, visits every city in
+ * the subset and ends at the given city, together with the city visited just before it.
+ */
+interface TspTable extends AutoCloseable {
+
+    /**
+     * Fills the table with the unset value and seeds the entry for the starting city.
+     */
+    void reset();
+
+    /**
+     * Gets the cost of the best path ending at a city and covering a subset.
+     *
+     * @param city The city the path ends at.
+     * @param subset The subset of cities covered by the path.
+     * @return The cost of the path, or dynaTSP.BIG_NUMBER if it has not been set.
+     */
+    double getCost(int city, int subset);
+
+    /**
+     * Gets the city visited before the given city on the best path covering a subset.
+     *
+     * @param city The city the path ends at.
+     * @param subset The subset of cities covered by the path.
+     * @return The previous city, or -1 if there is none.
+     */
+    int getPredecessor(int city, int subset);
+
+    /**
+     * Stores a new best path for a city and subset.
+     *
+     * @param city The city the path ends at.
+     * @param subset The subset of cities covered by the path.
+     * @param cost The cost of the path.
+     * @param predecessor The city visited before the given city.
+     */
+    void update(int city, int subset, double cost, int predecessor);
+
+    /**
+     * Tells whether the table can only be filled one layer (subset size) at a time,
+     * with {@link #startLayer} and {@link #finishLayer} around each layer.
+     *
+     * @return true if the solver must process subsets layer by layer; false otherwise.
+     */
+    default boolean requiresLayerOrder() {
+        return false;
+    }
+
+    /**
+     * Gets the memory one entry takes, used to report the size of a layer.
+     *
+     * @return The bytes of one cost and one predecessor.
+     */
+    default int bytesPerEntry() {
+        return Double.BYTES + Byte.BYTES;
+    }
+
+    /**
+     * Called before any subset of the given size is processed.
+     *
+     * @param size The number of cities in the subsets of the layer, including city 0.
+     */
+    default void startLayer(int size) {
+    }
+
+    /**
+     * Called once every subset of the given size has been processed.
+     * Costs of smaller layers are not read any more after this point.
+     *
+     * @param size The number of cities in the subsets of the layer, including city 0.
+     */
+    default void finishLayer(int size) {
+    }
+
+    /**
+     * Releases resources held outside the heap.
+     */
+    @Override
+    default void close() {
+    }
+}
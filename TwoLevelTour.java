@@ -0,0 +1,253 @@
+/**
+ * Two-level tour: the cycle is cut into blocks of about sqrt(n) cities, each with its own
+ * reversal bit, kept in a parent list. Reversing a path only splits the blocks at its two ends
+ * and reverses the order and bits of the whole blocks in between, so it costs O(sqrt(n))
+ * instead of O(n).
+ *
+ * Every block is a slice of one array of cities that never changes between rebuilds; splitting a
+ * block just makes two slices of it. Splits add blocks, so once there are too many the array is
+ * rebuilt from the current tour, which keeps the cost amortised O(sqrt(n)) per reversal.
+ */
+class TwoLevelTour implements Tour {
+
+    private final int cityCount;
+    private final int blockSize;
+    private final int maxBlocks;
+    private final int[] cities;
+    private final int[] cityIndex;
+    private final int[] blockOf;
+    private final int[] blockStart;
+    private final int[] blockEnd;
+    private final boolean[] blockReversed;
+    private final int[] blockRank;
+    private final int[] order;
+    private int blockCount;
+    private boolean flipped;
+
+    /**
+     * Creates a tour.
+     *
+     * @param tour The cities in visiting order.
+     */
+    TwoLevelTour(int[] tour) {
+        cityCount = tour.length;
+        blockSize = Math.max(8, (int) Math.sqrt(cityCount));
+        maxBlocks = 3 * ((cityCount + blockSize - 1) / blockSize) + 2;
+        cities = new int[cityCount];
+        cityIndex = new int[cityCount];
+        blockOf = new int[cityCount];
+        blockStart = new int[maxBlocks + 2];
+        blockEnd = new int[maxBlocks + 2];
+        blockReversed = new boolean[maxBlocks + 2];
+        blockRank = new int[maxBlocks + 2];
+        order = new int[maxBlocks + 2];
+        build(tour);
+    }
+
+    /**
+     * Lays the cities out in the given order in blocks of equal size, none of them reversed.
+     *
+     * @param sequence The cities in the order of the parent list.
+     */
+    private void build(int[] sequence) {
+        System.arraycopy(sequence, 0, cities, 0, cityCount);
+        blockCount = 0;
+        for (int start = 0; start < cityCount; start += blockSize) {
+            int block = blockCount++;
+            blockStart[block] = start;
+            blockEnd[block] = Math.min(cityCount, start + blockSize);
+            blockReversed[block] = false;
+            blockRank[block] = block;
+            order[block] = block;
+            for (int i = start; i < blockEnd[block]; i++) {
+                cityIndex[cities[i]] = i;
+                blockOf[cities[i]] = block;
+            }
+        }
+    }
+
+    private int firstOf(int block) {
+        return blockReversed[block] ? cities[blockEnd[block] - 1] : cities[blockStart[block]];
+    }
+
+    private int lastOf(int block) {
+        return blockReversed[block] ? cities[blockStart[block]] : cities[blockEnd[block] - 1];
+    }
+
+    /**
+     * Gets the successor of a city in the order of the parent list, ignoring the flipped flag.
+     */
+    private int successor(int city) {
+        int block = blockOf[city];
+        int i = cityIndex[city];
+        if (!blockReversed[block]) {
+            if (i + 1 < blockEnd[block]) {
+                return cities[i + 1];
+            }
+        } else if (i > blockStart[block]) {
+            return cities[i - 1];
+        }
+        int rank = blockRank[block] + 1;
+        return firstOf(order[rank == blockCount ? 0 : rank]);
+    }
+
+    /**
+     * Gets the predecessor of a city in the order of the parent list, ignoring the flipped flag.
+     */
+    private int predecessor(int city) {
+        int block = blockOf[city];
+        int i = cityIndex[city];
+        if (!blockReversed[block]) {
+            if (i > blockStart[block]) {
+                return cities[i - 1];
+            }
+        } else if (i + 1 < blockEnd[block]) {
+            return cities[i + 1];
+        }
+        int rank = blockRank[block];
+        return lastOf(order[rank == 0 ? blockCount - 1 : rank - 1]);
+    }
+
+    /**
+     * Gives every city a number that increases along the parent list.
+     */
+    private long sequenceKey(int city) {
+        int block = blockOf[city];
+        int offset = blockReversed[block] ? blockEnd[block] - 1 - cityIndex[city] : cityIndex[city] - blockStart[block];
+        return (long) blockRank[block] * cityCount + offset;
+    }
+
+    @Override
+    public int size() {
+        return cityCount;
+    }
+
+    @Override
+    public int next(int city) {
+        return flipped ? predecessor(city) : successor(city);
+    }
+
+    @Override
+    public int prev(int city) {
+        return flipped ? successor(city) : predecessor(city);
+    }
+
+    @Override
+    public boolean between(int from, int city, int to) {
+        if (flipped) {
+            int temp = from;
+            from = to;
+            to = temp;
+        }
+        long a = sequenceKey(from);
+        long b = sequenceKey(city);
+        long c = sequenceKey(to);
+        return a <= c ? a <= b && b <= c : b >= a || b <= c;
+    }
+
+    @Override
+    public void reverse(int from, int to) {
+        if (flipped) {
+            int temp = from;
+            from = to;
+            to = temp;
+        }
+        if (from == to) {
+            return;
+        }
+        if (successor(to) == from) {
+            // The path is the whole cycle, which reads the same reversed.
+            flipped = !flipped;
+            return;
+        }
+        splitBefore(from);
+        splitBefore(successor(to));
+
+        int first = blockRank[blockOf[from]];
+        int last = blockRank[blockOf[to]];
+        int count = Math.floorMod(last - first, blockCount) + 1;
+        if (2 * count > blockCount) {
+            first = last + 1 == blockCount ? 0 : last + 1;
+            count = blockCount - count;
+            flipped = !flipped;
+        }
+        for (int i = 0, j = count - 1; i < j; i++, j--) {
+            int left = (first + i) % blockCount;
+            int right = (first + j) % blockCount;
+            int temp = order[left];
+            order[left] = order[right];
+            order[right] = temp;
+        }
+        for (int i = 0; i < count; i++) {
+            int rank = (first + i) % blockCount;
+            int block = order[rank];
+            blockReversed[block] = !blockReversed[block];
+            blockRank[block] = rank;
+        }
+
+        if (blockCount > maxBlocks) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Splits a block so that the given city becomes the first city of a block.
+     * The second part becomes a new block directly after the first one in the parent list.
+     *
+     * @param city The city.
+     */
+    private void splitBefore(int city) {
+        int block = blockOf[city];
+        if (firstOf(block) == city) {
+            return;
+        }
+        int added = blockCount;
+        int i = cityIndex[city];
+        blockReversed[added] = blockReversed[block];
+        if (!blockReversed[block]) {
+            blockStart[added] = i;
+            blockEnd[added] = blockEnd[block];
+            blockEnd[block] = i;
+        } else {
+            blockStart[added] = blockStart[block];
+            blockEnd[added] = i + 1;
+            blockStart[block] = i + 1;
+        }
+        for (int j = blockStart[added]; j < blockEnd[added]; j++) {
+            blockOf[cities[j]] = added;
+        }
+
+        int rank = blockRank[block] + 1;
+        for (int r = blockCount; r > rank; r--) {
+            order[r] = order[r - 1];
+            blockRank[order[r]] = r;
+        }
+        order[rank] = added;
+        blockRank[added] = rank;
+        blockCount++;
+    }
+
+    /**
+     * Lays the cities out again in the current order with fresh, equally sized blocks.
+     */
+    private void rebuild() {
+        int[] sequence = new int[cityCount];
+        int city = firstOf(order[0]);
+        for (int i = 0; i < cityCount; i++) {
+            sequence[i] = city;
+            city = successor(city);
+        }
+        build(sequence);
+    }
+
+    @Override
+    public int[] toArray() {
+        int[] tour = new int[cityCount];
+        int city = 0;
+        for (int i = 0; i < cityCount; i++) {
+            tour[i] = city;
+            city = next(city);
+        }
+        return tour;
+    }
+}
@@ -0,0 +1,68 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD version of dynaTSP's relaxation using the incubating Vector API.
+ *
+ * In the compact layout the costs of every predecessor for a subset are contiguous, and the
+ * transposed distance matrix makes the distances into the current city contiguous too, so the
+ * search for the best predecessor is a vector add followed by a min-reduction. The winning
+ * predecessor is then found with a scalar scan for the first city reaching the minimum, which
+ * breaks ties like the scalar loop. Both paths add the same two doubles, so results are identical.
+ *
+ * Needs --add-modules jdk.incubator.vector at compile and run time. dynaTSP only loads this class
+ * reflectively, so the rest of the solver works without the module.
+ */
+class VectorKernel implements SubsetKernel {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    @Override
+    public void processSubset(double[] costs, byte[] predecessors, double[][] transposed,
+                              double[] distancesFromStart, int rowLength, int subset) {
+        for (int others = subset >>> 1; others != 0; others &= others - 1) {
+            int lane = Integer.numberOfTrailingZeros(others);
+            int currentCity = lane + 1;
+            int previousSubset = subset ^ (1 << currentCity);
+            int index = (subset >>> 1) * rowLength + lane;
+
+            if (previousSubset == 1) {
+                // Only city 0 has been visited, so the path comes straight from the start.
+                if (distancesFromStart[currentCity] < costs[index]) {
+                    costs[index] = distancesFromStart[currentCity];
+                    predecessors[index] = 0;
+                }
+                continue;
+            }
+
+            double[] distancesInto = transposed[currentCity];
+            int base = (previousSubset >>> 1) * rowLength;
+            int candidates = previousSubset >>> 1;
+            // Entries of cities outside the previous subset are never written and stay at
+            // BIG_NUMBER, so they cannot win the minimum and the lanes need no mask.
+            DoubleVector best = DoubleVector.broadcast(SPECIES, Double.POSITIVE_INFINITY);
+            int p = 0;
+            for (; p <= rowLength - SPECIES.length(); p += SPECIES.length()) {
+                DoubleVector potential = DoubleVector.fromArray(SPECIES, costs, base + p)
+                        .add(DoubleVector.fromArray(SPECIES, distancesInto, p));
+                best = best.min(potential);
+            }
+            double minimum = best.reduceLanes(VectorOperators.MIN);
+            for (; p < rowLength; p++) {
+                minimum = Math.min(minimum, costs[base + p] + distancesInto[p]);
+            }
+
+            if (minimum < costs[index]) {
+                for (int rest = candidates; rest != 0; rest &= rest - 1) {
+                    int previous = Integer.numberOfTrailingZeros(rest);
+                    if (costs[base + previous] + distancesInto[previous] == minimum) {
+                        costs[index] = minimum;
+                        predecessors[index] = (byte) (previous + 1);
+                        break;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,252 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Improves a heuristic tour by solving windows of consecutive cities exactly.
+ *
+ * A window is a path of k cities along the tour. Its first and last city stay where they are and
+ * the cities in between are reordered optimally with the Held-Karp recurrence used by
+ * {@link dynaTSP}, restricted to paths that end at a fixed city. Windows that only share end
+ * cities do not affect each other, so each pass cuts the tour into such windows and solves them in
+ * parallel. Passes alternate between two offsets so that the joins of one pass lie inside the
+ * windows of the next, and stop once two passes in a row find nothing. A window is skipped if none
+ * of its cities moved since it was last solved, two passes earlier.
+ */
+class WindowOptimizer {
+
+    static final int DEFAULT_WINDOW = 12;
+    private static final int MAX_WINDOW = 16;
+    private static final int WINDOWS_PER_TASK = 8;
+    private static final double EPSILON = 1e-9;
+
+    private final DistanceOracle oracle;
+    private final int windowSize;
+    private int passes;
+
+    /**
+     * Creates an optimizer.
+     *
+     * @param oracle The distance between every pair of cities.
+     * @param windowSize The number of cities in a window, ends included, from 4 to 16.
+     */
+    WindowOptimizer(DistanceOracle oracle, int windowSize) {
+        if (windowSize < 4 || windowSize > MAX_WINDOW) {
+            throw new IllegalArgumentException("Window size must be between 4 and " + MAX_WINDOW + ": " + windowSize);
+        }
+        this.oracle = oracle;
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * Optimizes a tour.
+     *
+     * @param tour The tour, changed in place.
+     * @param threads The number of worker threads to use.
+     * @param maxPasses The maximum number of passes over the tour.
+     * @return The total reduction in tour length.
+     */
+    double optimize(int[] tour, int threads, int maxPasses) {
+        int n = tour.length;
+        int k = Math.min(windowSize, n);
+        passes = 0;
+        if (k < 4) {
+            return 0;
+        }
+        int stride = k - 1;
+        int windowCount = Math.max(1, n / stride);
+        double[] gains = new double[windowCount];
+        int[] changedInPass = new int[n];
+        Arrays.fill(changedInPass, -1);
+        double totalGain = 0;
+        int idlePasses = 0;
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, threads));
+        try {
+            while (passes < maxPasses && idlePasses < 2) {
+                int offset = (passes % 2) * (stride / 2);
+                pool.invoke(new WindowTask(tour, changedInPass, passes, k, offset, gains, 0, windowCount));
+                passes++;
+                double passGain = 0;
+                for (double gain : gains) {
+                    passGain += gain;
+                }
+                totalGain += passGain;
+                idlePasses = passGain > EPSILON ? 0 : idlePasses + 1;
+            }
+        } finally {
+            pool.shutdown();
+        }
+        return totalGain;
+    }
+
+    /**
+     * Gets the number of passes the last call to optimize made.
+     *
+     * @return The number of passes.
+     */
+    int getPasses() {
+        return passes;
+    }
+
+    /**
+     * Fork-join task solving a range of the windows of one pass.
+     */
+    private class WindowTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] tour;
+        private final int[] changedInPass;
+        private final int pass;
+        private final int k;
+        private final int offset;
+        private final double[] gains;
+        private final int from;
+        private final int to;
+
+        WindowTask(int[] tour, int[] changedInPass, int pass, int k, int offset, double[] gains, int from, int to) {
+            this.tour = tour;
+            this.changedInPass = changedInPass;
+            this.pass = pass;
+            this.k = k;
+            this.offset = offset;
+            this.gains = gains;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= WINDOWS_PER_TASK) {
+                PathSolver solver = new PathSolver(k);
+                for (int window = from; window < to; window++) {
+                    int start = offset + window * (k - 1);
+                    gains[window] = changedSince(start, pass - 2) ? solver.improve(tour, start, changedInPass, pass) : 0;
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new WindowTask(tour, changedInPass, pass, k, offset, gains, from, middle),
+                    new WindowTask(tour, changedInPass, pass, k, offset, gains, middle, to));
+        }
+
+        /**
+         * Tells whether a city of the window starting at a position moved in a pass or later.
+         * Before the first two passes every window counts as changed.
+         */
+        private boolean changedSince(int start, int since) {
+            if (since < 0) {
+                return true;
+            }
+            for (int i = 0; i < k; i++) {
+                if (changedInPass[(start + i) % tour.length] >= since) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Solves one window at a time, reusing its tables.
+     */
+    private class PathSolver {
+        private final int k;
+        private final int inner;
+        private final int[] cities;
+        private final double[][] distances;
+        private final double[] costs;
+        private final byte[] predecessors;
+
+        PathSolver(int k) {
+            this.k = k;
+            inner = k - 2;
+            cities = new int[k];
+            distances = new double[k][k];
+            costs = new double[(1 << inner) * inner];
+            predecessors = new byte[costs.length];
+        }
+
+        /**
+         * Reorders the inner cities of the window starting at a position if that shortens it.
+         *
+         * Entry (subset, j) holds the shortest path that leaves the first city, visits the inner
+         * cities in subset and ends at inner city j. Inner cities are numbered 0 to k - 3 here, and
+         * the window's cities are 0 (first), 1 to k - 2 (inner) and k - 1 (last) in the local
+         * distance matrix.
+         *
+         * @param tour The tour, changed in place.
+         * @param start The position of the first city of the window.
+         * @param changedInPass Receives the pass number at every position that is changed.
+         * @param pass The current pass.
+         * @return The reduction in tour length.
+         */
+        double improve(int[] tour, int start, int[] changedInPass, int pass) {
+            int n = tour.length;
+            for (int i = 0; i < k; i++) {
+                cities[i] = tour[(start + i) % n];
+            }
+            double current = 0;
+            for (int i = 0; i < k; i++) {
+                for (int j = 0; j < k; j++) {
+                    distances[i][j] = i == j ? 0 : oracle.distance(cities[i], cities[j]);
+                }
+                if (i > 0) {
+                    current += distances[i - 1][i];
+                }
+            }
+
+            int full = (1 << inner) - 1;
+            for (int subset = 1; subset <= full; subset++) {
+                for (int j = 0; j < inner; j++) {
+                    if ((subset & (1 << j)) == 0) {
+                        continue;
+                    }
+                    int index = subset * inner + j;
+                    int rest = subset ^ (1 << j);
+                    if (rest == 0) {
+                        costs[index] = distances[0][j + 1];
+                        predecessors[index] = -1;
+                        continue;
+                    }
+                    double best = Double.MAX_VALUE;
+                    int bestPrevious = -1;
+                    for (int i = 0; i < inner; i++) {
+                        if ((rest & (1 << i)) != 0) {
+                            double cost = costs[rest * inner + i] + distances[i + 1][j + 1];
+                            if (cost < best) {
+                                best = cost;
+                                bestPrevious = i;
+                            }
+                        }
+                    }
+                    costs[index] = best;
+                    predecessors[index] = (byte) bestPrevious;
+                }
+            }
+
+            double best = Double.MAX_VALUE;
+            int last = -1;
+            for (int j = 0; j < inner; j++) {
+                double cost = costs[full * inner + j] + distances[j + 1][k - 1];
+                if (cost < best) {
+                    best = cost;
+                    last = j;
+                }
+            }
+            if (best >= current - EPSILON) {
+                return 0;
+            }
+
+            int subset = full;
+            int city = last;
+            for (int position = inner; position >= 1; position--) {
+                tour[(start + position) % n] = cities[city + 1];
+                changedInPass[(start + position) % n] = pass;
+                int previous = predecessors[subset * inner + city];
+                subset ^= 1 << city;
+                city = previous;
+            }
+            return current - best;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.DoubleSupplier;
+
+import bench.Workloads;
+
+/**
+ * The benchmark workloads, next to the solver classes in the default package so that they can use
+ * the package-private parts of the solvers. Loaded by name from {@link Workloads#load}.
+ */
+public class SolverWorkloads implements Workloads {
+
+    private static final long SEED = 1;
+    private static final int NEIGHBORS = 10;
+
+    private static TspInstance instance(double[] x, double[] y) {
+        return new TspInstance("benchmark", x, y, TspInstance.Metric.EUCLIDEAN);
+    }
+
+    @Override
+    public DoubleSupplier exactSolve(double[] x, double[] y) {
+        double[][] distances = dynaTSP.calculateDistances(DistanceOracle.create(instance(x, y), "dense"));
+        TspTable table = new CompactTable(x.length);
+        return () -> new dynaTSP(distances, table).solve(1).getCost();
+    }
+
+    @Override
+    public DoubleSupplier climb(double[] x, double[] y, String moves, int iterations) {
+        TspInstance instance = instance(x, y);
+        DistanceOracle distances = DistanceOracle.create(instance, "auto");
+        int n = x.length;
+        if (moves.equals("random")) {
+            climbTSP climber = new climbTSP(instance, distances, iterations, Integer.MAX_VALUE, 0);
+            int[] start = randomTour(n);
+            AtomicBoolean stop = new AtomicBoolean();
+            return () -> {
+                long before = climber.getMetrics().getCounter("climb.iterations");
+                climber.climbRandomMoves(start.clone(), new SplittableRandom(SEED), stop, Long.MAX_VALUE, null);
+                return climber.getMetrics().getCounter("climb.iterations") - before;
+            };
+        }
+        if (!moves.equals("neighbors")) {
+            throw new IllegalArgumentException("Unknown moves: " + moves);
+        }
+        // The same steps as climbTSP.solveWithNeighbors, so that the iterations made can be counted.
+        int[] neighbors = new SpatialGrid(x, y).nearestNeighbors(NEIGHBORS);
+        int[] start = randomTour(n);
+        AtomicBoolean stop = new AtomicBoolean();
+        return () -> {
+            Tour tour = n >= climbTSP.TWO_LEVEL_THRESHOLD ? new TwoLevelTour(start) : new ArrayTour(start);
+            return new LocalSearch(distances, neighbors, NEIGHBORS)
+                    .optimize(tour, start, iterations, Integer.MAX_VALUE, stop, Long.MAX_VALUE, null);
+        };
+    }
+
+    @Override
+    public DoubleSupplier tourLength(double[] x, double[] y, String distances) {
+        int[] tour = randomTour(x.length);
+        if (distances.equals("coordinates")) {
+            return () -> Geometry.tourLength(x, y, tour);
+        }
+        DistanceOracle oracle = DistanceOracle.create(instance(x, y), distances);
+        return () -> Geometry.tourLength(oracle, tour);
+    }
+
+    @Override
+    public void write(double[] x, double[] y, String format, Path file) throws IOException {
+        int n = x.length;
+        if (format.equals("binary")) {
+            InstanceLoader.writeBinary(instance(x, y), file, 0, 0);
+            return;
+        }
+        try (BufferedWriter out = Files.newBufferedWriter(file)) {
+            if (format.equals("tsplib")) {
+                out.write("NAME : benchmark\nTYPE : TSP\nDIMENSION : " + n + "\nEDGE_WEIGHT_TYPE : EUC_2D\n");
+                out.write("NODE_COORD_SECTION\n");
+                for (int i = 0; i < n; i++) {
+                    out.write((i + 1) + " " + x[i] + " " + y[i] + "\n");
+                }
+                out.write("EOF\n");
+            } else if (format.equals("plain")) {
+                out.write(n + "\n");
+                for (int i = 0; i < n; i++) {
+                    out.write(x[i] + " " + y[i] + "\n");
+                }
+            } else {
+                throw new IllegalArgumentException("Unknown format: " + format);
+            }
+        }
+    }
+
+    @Override
+    public DoubleSupplier read(Path file) {
+        return () -> {
+            try {
+                return InstanceLoader.load(file).size();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+    }
+
+    /**
+     * Shuffles the cities with a fixed seed, keeping city 0 in front.
+     */
+    private static int[] randomTour(int n) {
+        SplittableRandom random = new SplittableRandom(SEED);
+        int[] tour = new int[n];
+        for (int i = 0; i < n; i++) {
+            tour[i] = i;
+        }
+        for (int i = n - 1; i > 1; i--) {
+            int j = random.nextInt(i) + 1;
+            int temp = tour[i];
+            tour[i] = tour[j];
+            tour[j] = temp;
+        }
+        return tour;
+    }
+}
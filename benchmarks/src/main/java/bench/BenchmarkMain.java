@@ -0,0 +1,29 @@
+package bench;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs the benchmarks with the usual JMH command line, writing the results as JSON to
+ * jmh-result.json unless another result format or file is given.
+ */
+public final class BenchmarkMain {
+
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> options = Arrays.asList(args);
+        if (options.contains("-rf") || options.contains("-rff") || options.contains("-h")
+                || options.contains("-l") || options.contains("-lp")) {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+        String[] withJson = Arrays.copyOf(args, args.length + 4);
+        withJson[args.length] = "-rf";
+        withJson[args.length + 1] = "json";
+        withJson[args.length + 2] = "-rff";
+        withJson[args.length + 3] = "jmh-result.json";
+        org.openjdk.jmh.Main.main(withJson);
+    }
+}
@@ -0,0 +1,71 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Iteration throughput of climbTSP. Every invocation climbs the same random start tour for up to
+ * 20,000 iterations; the "iterations" counter in the results is the rate of iterations actually
+ * made, which is the number to compare between versions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector", "-Xmx2g"})
+public class ClimbBenchmark {
+
+    private static final int ITERATIONS = 20000;
+
+    @Param({"1000", "10000", "100000"})
+    public int n;
+
+    @Param({"uniform", "clustered"})
+    public String distribution;
+
+    @Param({"neighbors", "random"})
+    public String moves;
+
+    private DoubleSupplier climb;
+
+    /**
+     * Counts the climb iterations, reported as a rate next to the primary result.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Iterations {
+
+        public long iterations;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            iterations = 0;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        double[][] cities = Instances.generate(distribution, n);
+        climb = Workloads.load().climb(cities[0], cities[1], moves, ITERATIONS);
+    }
+
+    @Benchmark
+    public void climb(Iterations counter) {
+        counter.iterations += (long) climb.getAsDouble();
+    }
+}
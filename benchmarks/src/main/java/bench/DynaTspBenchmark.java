@@ -0,0 +1,48 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time of one exact dynaTSP solve on one thread, with the compact table. The table is allocated
+ * once per trial, as a batch of solves would reuse it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector", "-Xmx3g"})
+public class DynaTspBenchmark {
+
+    @Param({"12", "16", "20", "24"})
+    public int n;
+
+    @Param({"uniform", "clustered"})
+    public String distribution;
+
+    private DoubleSupplier solve;
+
+    @Setup
+    public void setup() {
+        double[][] cities = Instances.generate(distribution, n);
+        solve = Workloads.load().exactSolve(cities[0], cities[1]);
+    }
+
+    @Benchmark
+    public double solve() {
+        return solve.getAsDouble();
+    }
+}
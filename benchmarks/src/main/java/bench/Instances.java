@@ -0,0 +1,62 @@
+package bench;
+
+import java.util.SplittableRandom;
+
+/**
+ * Seeded random instances, so every run and every version benchmarks the same cities.
+ */
+final class Instances {
+
+    static final long SEED = 20240601L;
+    private static final double SIDE = 1000000;
+    private static final int CITIES_PER_CLUSTER = 100;
+
+    private Instances() {
+    }
+
+    /**
+     * Generates an instance.
+     *
+     * @param distribution "uniform" for cities spread evenly over a square, "clustered" for
+     *                     normally distributed clusters of about 100 cities around uniform centres.
+     * @param n The number of cities.
+     * @return The x coordinates followed by the y coordinates.
+     */
+    static double[][] generate(String distribution, int n) {
+        SplittableRandom random = new SplittableRandom(SEED + n);
+        double[] x = new double[n];
+        double[] y = new double[n];
+        if (distribution.equals("uniform")) {
+            for (int i = 0; i < n; i++) {
+                x[i] = random.nextDouble() * SIDE;
+                y[i] = random.nextDouble() * SIDE;
+            }
+        } else if (distribution.equals("clustered")) {
+            int clusters = Math.max(1, n / CITIES_PER_CLUSTER);
+            double[] centerX = new double[clusters];
+            double[] centerY = new double[clusters];
+            for (int c = 0; c < clusters; c++) {
+                centerX[c] = random.nextDouble() * SIDE;
+                centerY[c] = random.nextDouble() * SIDE;
+            }
+            double spread = SIDE / Math.sqrt(clusters) / 10;
+            for (int i = 0; i < n; i++) {
+                int c = random.nextInt(clusters);
+                x[i] = centerX[c] + gaussian(random) * spread;
+                y[i] = centerY[c] + gaussian(random) * spread;
+            }
+        } else {
+            throw new IllegalArgumentException("Unknown distribution: " + distribution);
+        }
+        return new double[][] {x, y};
+    }
+
+    /**
+     * Draws from the standard normal distribution with the Box-Muller transform.
+     */
+    private static double gaussian(SplittableRandom random) {
+        double u = 1 - random.nextDouble();
+        double v = random.nextDouble();
+        return Math.sqrt(-2 * Math.log(u)) * Math.cos(2 * Math.PI * v);
+    }
+}
@@ -0,0 +1,61 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to read an instance file in each input format. The file is written to a temporary
+ * directory before the trial, so after the first read it comes from the page cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector", "-Xmx2g"})
+public class ParseBenchmark {
+
+    @Param({"10000", "1000000"})
+    public int n;
+
+    @Param({"plain", "tsplib", "binary"})
+    public String format;
+
+    private Path file;
+    private DoubleSupplier read;
+
+    @Setup
+    public void setup() throws IOException {
+        double[][] cities = Instances.generate("uniform", n);
+        Workloads workloads = Workloads.load();
+        file = Files.createTempFile("benchmark-" + n + "-", "." + format);
+        workloads.write(cities[0], cities[1], format, file);
+        read = workloads.read(file);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public double read() {
+        return read.getAsDouble();
+    }
+}
@@ -0,0 +1,70 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.function.DoubleSupplier;
+
+/**
+ * The solver operations the benchmarks time.
+ *
+ * JMH only accepts benchmarks in a named package, and a named package cannot refer to the solver
+ * classes in the default package. The default package class {@code SolverWorkloads} implements this
+ * interface instead and is looked up by name. Each method does its preparation up front and returns
+ * the operation to time, so the interface call is the only cost the benchmarks add.
+ */
+public interface Workloads {
+
+    /**
+     * Loads the implementation next to the solver classes.
+     *
+     * @return The workloads.
+     */
+    static Workloads load() {
+        try {
+            return (Workloads) Class.forName("SolverWorkloads").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("SolverWorkloads is missing from the class path", e);
+        }
+    }
+
+    /**
+     * Prepares an exact dynaTSP solve on one thread.
+     *
+     * @return Solves the instance and returns the optimal tour length.
+     */
+    DoubleSupplier exactSolve(double[] x, double[] y);
+
+    /**
+     * Prepares a climbTSP climb from a fixed random start, finding the candidate neighbours up front.
+     *
+     * @param moves "neighbors" for 2-opt and Or-opt on candidate edges, "random" for random swap
+     *              and 2-opt moves between any two cities.
+     * @param iterations The iteration limit of one climb.
+     * @return Runs one climb and returns the number of iterations made.
+     */
+    DoubleSupplier climb(double[] x, double[] y, String moves, int iterations);
+
+    /**
+     * Prepares the evaluation of a fixed random tour.
+     *
+     * @param distances "coordinates" to compute every edge from the coordinate arrays, or a
+     *                  distance oracle mode: auto, dense, packed or lazy.
+     * @return Measures the tour and returns its length.
+     */
+    DoubleSupplier tourLength(double[] x, double[] y, String distances);
+
+    /**
+     * Writes an instance to a file.
+     *
+     * @param format "plain", "tsplib" or "binary".
+     * @throws IOException If the file cannot be written.
+     */
+    void write(double[] x, double[] y, String format, Path file) throws IOException;
+
+    /**
+     * Prepares reading an instance file.
+     *
+     * @return Reads the file and returns the number of cities.
+     */
+    DoubleSupplier read(Path file);
+}
@@ -7,7 +7,15 @@
  */
 
 import java.io.*;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * HillClimbTSP is a class for solving the Traveling Salesman Problem (TSP)
@@ -16,11 +24,18 @@ import java.util.*;
 public class climbTSP {
 
     private int numNodes;
-    private double[][] coordinates; // Store x and y coordinates
+    private double[] x; // x coordinate of every node
+    private double[] y; // y coordinate of every node
+    private final DistanceOracle distances;
     private int maxIterations;
     private int plateauLimit;
-        private static int[][] distances;
-
+    private int neighborCount;
+    private int[] neighbors;
+    private static final double EPSILON = 1e-9;
+    private static final long NO_DEADLINE = Long.MAX_VALUE;
+    static final int DEFAULT_NEIGHBORS = 10;
+    static final int TWO_LEVEL_THRESHOLD = 1000;
+    private static final int WINDOW_PASSES = 50;
 
     /**
      * Initializes a new instance of the HillClimbTSP class.
@@ -31,182 +46,751 @@ public class climbTSP {
      * @param plateauLimit  The limit for consecutive iterations without improvement before restarting.
      */
     public climbTSP(int numNodes, double[][] coordinates, int maxIterations, int plateauLimit) {
-        this.numNodes = numNodes;
-        this.coordinates = coordinates;
+        this(numNodes, coordinates, maxIterations, plateauLimit, DEFAULT_NEIGHBORS);
+    }
+
+    /**
+     * Initializes a new instance of the HillClimbTSP class.
+     *
+     * @param numNodes      The number of nodes in the TSP problem.
+     * @param coordinates   The coordinates of the nodes 
+     * @param maxIterations The maximum number of iterations for the hill climbing algorithm.
+     * @param plateauLimit  The limit for consecutive iterations without improvement before restarting.
+     * @param neighborCount The number of nearest neighbours each node may be connected to by a move,
+     *                      or 0 to try random moves between any two nodes.
+     */
+    public climbTSP(int numNodes, double[][] coordinates, int maxIterations, int plateauLimit, int neighborCount) {
+        this(new TspInstance("coordinates", splitAxis(coordinates, numNodes, 0), splitAxis(coordinates, numNodes, 1),
+                TspInstance.Metric.EUCLIDEAN), maxIterations, plateauLimit, neighborCount);
+    }
+
+    /**
+     * Initializes a new instance of the HillClimbTSP class for the cities of an instance.
+     *
+     * @param instance      The cities; their coordinate arrays are shared, not copied.
+     * @param maxIterations The maximum number of iterations for the hill climbing algorithm.
+     * @param plateauLimit  The limit for consecutive iterations without improvement before restarting.
+     * @param neighborCount The number of nearest neighbours each node may be connected to by a move,
+     *                      or 0 to try random moves between any two nodes.
+     */
+    public climbTSP(TspInstance instance, int maxIterations, int plateauLimit, int neighborCount) {
+        this(instance, DistanceOracle.create(instance, "auto"), maxIterations, plateauLimit, neighborCount);
+    }
+
+    /**
+     * Initializes a new instance of the HillClimbTSP class that measures distances with the given oracle.
+     *
+     * @param instance      The cities; their coordinate arrays are shared, not copied.
+     * @param distances     The distance between every pair of cities.
+     * @param maxIterations The maximum number of iterations for the hill climbing algorithm.
+     * @param plateauLimit  The limit for consecutive iterations without improvement before restarting.
+     * @param neighborCount The number of nearest neighbours each node may be connected to by a move,
+     *                      or 0 to try random moves between any two nodes.
+     */
+    climbTSP(TspInstance instance, DistanceOracle distances, int maxIterations, int plateauLimit, int neighborCount) {
+        this.numNodes = instance.size();
+        this.x = instance.getX();
+        this.y = instance.getY();
+        this.distances = distances;
         this.maxIterations = maxIterations;
         this.plateauLimit = plateauLimit;
+        this.neighborCount = Math.min(neighborCount, numNodes - 1);
+        setMetrics(new SolverMetrics("climbTSP"));
+    }
+
+    /**
+     * Copies one axis out of {x, y} coordinate rows.
+     *
+     * @param coordinates The coordinate rows.
+     * @param count The number of rows to copy.
+     * @param axis 0 for x, 1 for y.
+     * @return The coordinates along the axis.
+     */
+    private static double[] splitAxis(double[][] coordinates, int count, int axis) {
+        double[] values = new double[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = coordinates[i][axis];
+        }
+        return values;
     }
 
     /**
      * Main method to run the TSP solver with command-line arguments.
      *
-     * @param args takes in Input file max iterations and pleatau limit
+     * @param args takes in Input file max iterations and pleatau limit, optionally followed by
+     *             --neighbors K (candidate neighbours per node, 0 for random moves, default 10),
+     *             --starts N (independent climbs, default 1), --threads T (threads running them,
+     *             default all cores), --seed S (makes the run reproducible), --budget MS (stop
+     *             after this many milliseconds), --target COST (stop once a tour this short is found)
+     *             --window K (then solve windows of K consecutive cities exactly, see WindowOptimizer)
+     *             --progress (print progress to standard error while solving)
+     *             --cache (keep a binary copy of the instance next to the input file for faster loading)
+     *             --distances auto|dense|packed|lazy (how distances are stored, default auto)
+     *             --init random|hilbert|nearest|greedy (how the starting tours are built, default random)
+     *             --partition SIZE (split the instance into cells of at most SIZE cities, see PartitionSolver)
+     *             --memetic SIZE (evolve a population of SIZE climbed tours, see MemeticSolver)
+     *             and --metrics FILE (write phase times and counters as JSON to FILE, or to standard error for -)
      */
+    @SuppressWarnings("try")
     public static void main(String[] args) {
-        if (args.length != 3) {
-            System.out.println("Usage: java HillClimbTSP <input_file> <Max Iterations> <Plateau Limit>");
+        if (args.length < 3) {
+            System.out.println("Usage: java climbTSP <input_file> <Max Iterations> <Plateau Limit> [--neighbors K] "
+                    + "[--starts N] [--threads T] [--seed S] [--budget MS] [--target COST] [--window K] [--progress] [--cache] [--distances auto|dense|packed|lazy] "
+                    + "[--init random|hilbert|nearest|greedy] [--partition SIZE] [--memetic SIZE] [--metrics FILE]");
             return;
         }
 
         String inputFileName = args[0];
         int maxIterations = Integer.parseInt(args[1]);
         int plateauLimit = Integer.parseInt(args[2]);
+        int neighborCount = DEFAULT_NEIGHBORS;
+        int starts = 1;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long seed = System.nanoTime();
+        long budgetMs = 0;
+        double targetCost = 0;
+        boolean progress = false;
+        int windowSize = 0;
+        boolean cache = false;
+        String distanceMode = "auto";
+        String initMode = null;
+        int cellSize = 0;
+        int populationSize = 0;
+        String metricsFile = null;
+        for (int i = 3; i < args.length; i++) {
+            if (args[i].equals("--neighbors") && i + 1 < args.length) {
+                neighborCount = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--starts") && i + 1 < args.length) {
+                starts = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--threads") && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--seed") && i + 1 < args.length) {
+                seed = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--budget") && i + 1 < args.length) {
+                budgetMs = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--target") && i + 1 < args.length) {
+                targetCost = Double.parseDouble(args[++i]);
+            } else if (args[i].equals("--window") && i + 1 < args.length) {
+                windowSize = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--progress")) {
+                progress = true;
+            } else if (args[i].equals("--cache")) {
+                cache = true;
+            } else if (args[i].equals("--distances") && i + 1 < args.length) {
+                distanceMode = args[++i];
+            } else if (args[i].equals("--init") && i + 1 < args.length) {
+                initMode = args[++i];
+            } else if (args[i].equals("--partition") && i + 1 < args.length) {
+                cellSize = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--memetic") && i + 1 < args.length) {
+                populationSize = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--metrics") && i + 1 < args.length) {
+                metricsFile = args[++i];
+            } else {
+                System.out.println("Unknown option: " + args[i]);
+                return;
+            }
+        }
 
         try {
-            Scanner scanner = new Scanner(new File(inputFileName));
-
-            // Read the number of nodes
-            int numNodes = scanner.nextInt();
-            double[][] coordinates = new double[numNodes][2]; // Store x and y coordinates
-
-            for (int i = 0; i < numNodes; i++) {
-                int x = scanner.nextInt();
-                int y = scanner.nextInt();
-                coordinates[i][0] = x;
-                coordinates[i][1] = y;
+            SolverMetrics metrics = new SolverMetrics("climbTSP");
+            Path inputPath = Paths.get(inputFileName);
+            TspInstance instance;
+            try (SolverMetrics.Phase phase = metrics.time("load")) {
+                instance = cache ? InstanceLoader.loadCached(inputPath) : InstanceLoader.load(inputPath);
+            }
+            DistanceOracle distances;
+            try (SolverMetrics.Phase phase = metrics.time("distances")) {
+                distances = DistanceOracle.create(instance, distanceMode);
+            }
+            climbTSP tspSolver = new climbTSP(instance, distances, maxIterations, plateauLimit, neighborCount);
+            tspSolver.setMetrics(metrics);
+            if (initMode != null) {
+                tspSolver.setInitialTour(initMode);
+            }
+            if (progress) {
+                tspSolver.setProgressListener(System.err::println);
             }
-
-            climbTSP tspSolver = new climbTSP(numNodes, coordinates, maxIterations, plateauLimit);
 
             long startTime = System.nanoTime();
-            List<Integer> bestSolution = tspSolver.solve();
+            TourResult bestSolution;
+            PartitionSolver partitions = null;
+            MemeticSolver memetic = null;
+            if (cellSize > 0) {
+                partitions = new PartitionSolver(instance, distances, cellSize, maxIterations, plateauLimit, neighborCount);
+                partitions.setSeed(seed);
+                partitions.setMetrics(metrics);
+                if (initMode != null) {
+                    partitions.setInitialTour(initMode);
+                }
+                bestSolution = partitions.solve(threads, budgetMs);
+            } else if (populationSize > 0) {
+                memetic = new MemeticSolver(instance, distances, populationSize, maxIterations, plateauLimit,
+                        neighborCount);
+                memetic.setSeed(seed);
+                memetic.setMetrics(metrics);
+                if (progress) {
+                    memetic.setProgressListener(System.err::println);
+                }
+                bestSolution = memetic.solve(threads, budgetMs, targetCost);
+            } else {
+                bestSolution = tspSolver.solveMultiStart(starts, threads, seed, budgetMs, targetCost);
+            }
+            double climbedLength = bestSolution.getCost();
+            if (windowSize > 0) {
+                bestSolution = tspSolver.optimizeWindows(bestSolution, windowSize, threads);
+            }
             long endTime = System.nanoTime();
             double durationMs = (endTime - startTime) / 1e6;
 
-            double bestCost = tspSolver.calculateTourLength(bestSolution);
-
+            System.out.println("Seed: " + seed);
+            if (partitions != null) {
+                System.out.println("Cells solved: " + partitions.getCellsSolved());
+            } else if (memetic != null) {
+                System.out.println("Generations: " + memetic.getGenerationsRun());
+            } else {
+                System.out.println("Starts completed: " + tspSolver.lastStartsCompleted + " of " + starts);
+            }
+            if (windowSize > 0) {
+                System.out.println("Tour Length before window optimization: " + climbedLength);
+            }
             System.out.println("Best TSP Tour: " + bestSolution);
-            System.out.println("Total Tour Length: " + bestCost);
+            System.out.println("Total Tour Length: " + bestSolution.getCost());
             System.out.println("Time Taken: " + durationMs + " ms");
+            if (metricsFile != null) {
+                try {
+                    metrics.writeJson(metricsFile);
+                } catch (IOException e) {
+                    System.err.println("Error writing the metrics: " + e.getMessage());
+                }
+            }
 
-            scanner.close();
-
-        } catch (FileNotFoundException e) {
+        } catch (IOException e) {
             System.err.println("Error reading the input file: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+        }
+    }
+
+    private volatile int lastStartsCompleted;
+    private ProgressListener progressListener;
+    private String initMode = "random";
+    private int[] constructedTour;
+    private SolverMetrics metrics;
+
+    /**
+     * Sets the metrics the climbs report their phase times and move counters to. Every solver
+     * starts with metrics of its own.
+     *
+     * @param metrics The metrics, possibly shared with other solvers.
+     */
+    public void setMetrics(SolverMetrics metrics) {
+        this.metrics = metrics;
+        metrics.perSecond("climb.evaluationsPerSecond", "climb.movesProposed", "search");
+    }
+
+    /**
+     * @return The phase times and move counters of all climbs so far.
+     */
+    public SolverMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the listener told about the best tour length and the iteration rate while solving.
+     *
+     * @param listener The listener, or null for none.
+     */
+    public void setProgressListener(ProgressListener listener) {
+        progressListener = listener;
+    }
+
+    /**
+     * Chooses how the starting tour of every climb is built.
+     * <ul>
+     * <li>random: a random permutation (the default)</li>
+     * <li>hilbert: the order of the cities along a Hilbert curve</li>
+     * <li>nearest: nearest neighbour from a random city, so every start differs</li>
+     * <li>greedy: the greedy edge tour over the candidate edges</li>
+     * </ul>
+     * The hilbert and greedy tours are built once and shared by all starts.
+     *
+     * @param mode One of random, hilbert, nearest or greedy.
+     * @throws IllegalArgumentException If the mode is unknown.
+     */
+    public void setInitialTour(String mode) {
+        checkInitialTour(mode);
+        initMode = mode;
+        constructedTour = null;
+    }
+
+    /**
+     * Checks that a starting tour mode is known.
+     *
+     * @param mode The mode.
+     * @throws IllegalArgumentException If it is not random, hilbert, nearest or greedy.
+     */
+    static void checkInitialTour(String mode) {
+        switch (mode) {
+            case "random":
+            case "hilbert":
+            case "nearest":
+            case "greedy":
+                return;
+            default:
+                throw new IllegalArgumentException("Unknown initial tour: " + mode
+                        + " (expected random, hilbert, nearest or greedy)");
+        }
+    }
+
+    /**
+     * Best tour published by the climbs of a multi-start run. Ties are broken by the lower start
+     * number so that a seeded run gives the same result however the climbs are scheduled.
+     */
+    private static final class Incumbent {
+        final TourResult result;
+        final int start;
+
+        Incumbent(TourResult result, int start) {
+            this.result = result;
+            this.start = start;
         }
+
+        boolean isBetterThan(Incumbent other) {
+            return other == null || result.getCost() < other.result.getCost()
+                    || (result.getCost() == other.result.getCost() && start < other.start);
+        }
+    }
+
+    /**
+     * Polishes a tour by solving windows of consecutive cities exactly with a {@link WindowOptimizer}.
+     *
+     * @param tour The tour to improve.
+     * @param windowSize The number of cities in a window, from 4 to 16.
+     * @param threads The number of worker threads to use.
+     * @return The improved tour, starting at city 0.
+     */
+    @SuppressWarnings("try")
+    TourResult optimizeWindows(TourResult tour, int windowSize, int threads) {
+        int[] cities = tour.getTour().clone();
+        try (SolverMetrics.Phase phase = metrics.time("window")) {
+            new WindowOptimizer(distances, windowSize).optimize(cities, threads, WINDOW_PASSES);
+        }
+        int[] rotated = TourResult.startAtZero(cities);
+        return new TourResult(rotated, calculateTourLength(rotated));
+    }
+
+    /**
+     * Runs independent climbs from different random starts on a thread pool and keeps the best tour.
+     *
+     * Each start gets its own SplittableRandom, split off a generator seeded with the given seed
+     * in start order before any climb runs, so every start sees the same random numbers whichever
+     * thread runs it. Finished climbs publish their tour to a shared incumbent with a
+     * compare-and-set loop. The run stops early once the budget has passed or the incumbent
+     * reaches the target cost; climbs in progress are then cut short, and their current tours are
+     * still kept, so the result is the best tour found when the budget ran out.
+     *
+     * @param starts The number of climbs.
+     * @param threads The number of climbs running at the same time.
+     * @param seed The seed all random streams are derived from.
+     * @param budgetMs The wall-clock budget in milliseconds, or 0 for none.
+     * @param targetCost A tour length that is good enough to stop at, or 0 for none.
+     * @return The best tour of all completed climbs.
+     * @throws IllegalArgumentException If there is not at least one start.
+     * @throws IllegalStateException If the calling thread is interrupted before any climb started.
+     */
+    TourResult solveMultiStart(int starts, int threads, long seed, long budgetMs, double targetCost) {
+        if (starts < 1) {
+            throw new IllegalArgumentException("Multi-start needs at least 1 start: " + starts);
+        }
+        long deadline = budgetMs > 0 ? System.nanoTime() + budgetMs * 1000000L : NO_DEADLINE;
+        SplittableRandom master = new SplittableRandom(seed);
+        SplittableRandom[] streams = new SplittableRandom[starts];
+        for (int start = 0; start < starts; start++) {
+            streams[start] = master.split();
+        }
+        candidateNeighbors();
+
+        AtomicReference<Incumbent> best = new AtomicReference<>();
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicInteger completed = new AtomicInteger();
+        ProgressTracker progress = ProgressTracker.of("climbTSP", "iterations", progressListener);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, starts)));
+        for (int start = 0; start < starts; start++) {
+            int number = start;
+            executor.execute(() -> {
+                if (stop.get()) {
+                    return;
+                }
+                Incumbent candidate = new Incumbent(solve(streams[number], stop, deadline, progress), number);
+                completed.incrementAndGet();
+                Incumbent current = best.get();
+                while (candidate.isBetterThan(current) && !best.compareAndSet(current, candidate)) {
+                    current = best.get();
+                }
+                if (best.get().result.getCost() <= targetCost || System.nanoTime() - deadline >= 0) {
+                    stop.set(true);
+                }
+            });
+        }
+        executor.shutdown();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                    break;
+                }
+                // Keep waiting; climbs stop on their own at the deadline.
+            } catch (InterruptedException e) {
+                // Cut the climbs short, but wait for those running to publish their tours.
+                stop.set(true);
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        lastStartsCompleted = completed.get();
+        Incumbent incumbent = best.get();
+        if (incumbent == null) {
+            throw new IllegalStateException("Interrupted before any climb started");
+        }
+        TourResult result = incumbent.result;
+        if (progress != null) {
+            progress.finish(result.getCost());
+        }
+        return result;
+    }
+
+    /**
+     * Solves the TSP problem using a hill climbing algorithm from one random start.
+     *
+     * @return The best TSP tour found by the algorithm.
+     */
+    TourResult solve() {
+        return solve(new SplittableRandom(), new AtomicBoolean(), NO_DEADLINE, null);
+    }
+
+    /**
+     * Tells whether a climb should stop early.
+     *
+     * @param stop Set when the climb should stop.
+     * @param deadline The System.nanoTime() value to stop at, or NO_DEADLINE.
+     * @param iteration The current iteration; the clock is only read every 256 iterations.
+     * @return true if the climb should stop; false otherwise.
+     */
+    static boolean shouldStop(AtomicBoolean stop, long deadline, int iteration) {
+        return stop.get() || (deadline != NO_DEADLINE && (iteration & 255) == 0 && System.nanoTime() - deadline >= 0);
     }
 
     /**
      * Solves the TSP problem using a hill climbing algorithm.
      *
+     * The tour is a primitive array changed in place. Each iteration proposes either swapping two
+     * cities or reversing the segment between them (a 2-opt move), scores it by the change in
+     * length of the few edges it touches, and only applies it if the tour gets shorter.
+     * Safe to call from several threads at once, each with its own random stream.
+     *
+     * @param random The random stream of this climb.
+     * @param stop Set when the climb should stop early.
+     * @param deadline The System.nanoTime() value to stop at, or NO_DEADLINE.
+     * @param progress Receives the current tour length every 256 iterations, or null.
      * @return The best TSP tour found by the algorithm.
      */
-    private List<Integer> solve() {
-        List<Integer> currentSolution = generateRandomSolution();
-        List<Integer> bestSolution = new ArrayList<>(currentSolution);
-        double currentCost = calculateTourLength(currentSolution);
-        double bestCost = currentCost;
+    TourResult solve(SplittableRandom random, AtomicBoolean stop, long deadline, ProgressTracker progress) {
+        if (neighborCount > 1 && numNodes > 4) {
+            return solveWithNeighbors(random, stop, deadline, progress);
+        }
+        int[] tour = initialTour(random);
+        if (numNodes < 3) {
+            return new TourResult(tour, calculateTourLength(tour));
+        }
+        return climbRandomMoves(tour, random, stop, deadline, progress);
+    }
 
+    /**
+     * Climbs a tour with random swap and 2-opt moves, as {@link #solve} does without candidate
+     * neighbours.
+     *
+     * @param tour The starting tour, starting at city 0; it is changed in place.
+     * @param random The random stream of this climb.
+     * @param stop Set when the climb should stop early.
+     * @param deadline The System.nanoTime() value to stop at, or NO_DEADLINE.
+     * @param progress Receives the current tour length every 256 iterations, or null.
+     * @return The climbed tour.
+     */
+    @SuppressWarnings("try")
+    TourResult climbRandomMoves(int[] tour, SplittableRandom random, AtomicBoolean stop, long deadline,
+                                ProgressTracker progress) {
         int plateauSize = 0; // Counter for consecutive iterations without improvement
         int iteration = 0;
+        long accepted = 0;
+        boolean plateauReached = false;
+        double length = progress != null ? calculateTourLength(tour) : 0;
+        ClimbEvent event = SolverMetrics.beginClimb();
+        try (SolverMetrics.Phase phase = metrics.time("search")) {
+            while (iteration < maxIterations && !shouldStop(stop, deadline, iteration)) {
+                if (progress != null && iteration > 0 && (iteration & 255) == 0) {
+                    progress.update(256, length);
+                }
+                int i, j;
+                do {
+                    i = random.nextInt(numNodes - 1) + 1;
+                    j = random.nextInt(numNodes - 1) + 1;
+                } while (i == j);
+                if (i > j) {
+                    int temp = i;
+                    i = j;
+                    j = temp;
+                }
 
-        while (iteration < maxIterations) {
-            List<Integer> neighborSolution = generateNeighborSolution(currentSolution);
-            double neighborCost = calculateTourLength(neighborSolution);
+                boolean reverse = random.nextBoolean();
+                double delta = reverse ? reversalDelta(tour, i, j) : swapDelta(tour, i, j);
 
-            if (neighborCost < currentCost) {
-                currentSolution = neighborSolution;
-                currentCost = neighborCost;
-                plateauSize = 0; // Reset plateau size counter because there was an improvement
+                if (delta < -EPSILON) {
+                    if (reverse) {
+                        reverseSegment(tour, i, j);
+                    } else {
+                        int temp = tour[i];
+                        tour[i] = tour[j];
+                        tour[j] = temp;
+                    }
+                    length += delta;
+                    accepted++;
+                    plateauSize = 0; // Reset plateau size counter because there was an improvement
+                } else {
+                    plateauSize++;
 
-                if (currentCost < bestCost) {
-                    bestSolution = new ArrayList<>(currentSolution);
-                    bestCost = currentCost;
+                    if (plateauSize >= plateauLimit) {
+                        // Stop the search because no improvement is seen for a reasonably large number of consecutive iterations
+                        plateauReached = true;
+                        break;
+                    }
                 }
-            } else {
-                plateauSize++;
 
-                if (plateauSize >= plateauLimit) {
-                    // Stop the search because no improvement is seen for a reasonably large number of consecutive iterations
-                    break;
-                }
+                iteration++;
             }
+        }
+
+        // Every accepted move shortens the tour, so the current tour is the best one seen.
+        TourResult result = new TourResult(tour, calculateTourLength(tour));
+        // One move is proposed per iteration, including the one that hit the plateau limit.
+        long proposed = plateauReached ? iteration + 1 : iteration;
+        recordClimb(event, iteration, proposed, accepted, plateauReached, result.getCost());
+        return result;
+    }
 
-            iteration++;
+    /**
+     * Solves the TSP problem with 2-opt and Or-opt moves restricted to candidate edges.
+     *
+     * Each node's nearest neighbours are found with a {@link SpatialGrid} and the moves are made by
+     * a {@link LocalSearch}. Large tours are kept in a {@link TwoLevelTour}, where reversing a path
+     * costs O(sqrt(n)) rather than O(n). Each node taken from the search queue counts as one iteration.
+     *
+     * @param random The random stream of this climb.
+     * @param stop Set when the climb should stop early.
+     * @param deadline The System.nanoTime() value to stop at, or NO_DEADLINE.
+     * @param progress Receives the current tour length every 256 iterations, or null.
+     * @return The best TSP tour found by the algorithm.
+     */
+    @SuppressWarnings("try")
+    private TourResult solveWithNeighbors(SplittableRandom random, AtomicBoolean stop, long deadline,
+                                          ProgressTracker progress) {
+        int[] start = initialTour(random);
+        Tour tour = numNodes >= TWO_LEVEL_THRESHOLD ? new TwoLevelTour(start) : new ArrayTour(start);
+        LocalSearch search = new LocalSearch(distances, candidateNeighbors(), neighborCount);
+        ClimbEvent event = SolverMetrics.beginClimb();
+        int iterations;
+        try (SolverMetrics.Phase phase = metrics.time("search")) {
+            iterations = search.optimize(tour, start, maxIterations, plateauLimit, stop, deadline, progress);
         }
+        int[] climbed = tour.toArray();
+        TourResult result = new TourResult(climbed, calculateTourLength(climbed));
+        recordClimb(event, iterations, search.getEvaluations(), search.getAccepted(), search.isPlateauReached(),
+                result.getCost());
+        return result;
+    }
 
-        return bestSolution;
+    /**
+     * Adds the counts of a finished climb to the metrics and commits its Flight Recorder event.
+     *
+     * @param event The event, begun when the climb started, or null if Flight Recorder is not running.
+     * @param iterations The number of iterations.
+     * @param proposed The number of moves scored.
+     * @param accepted The number of moves applied.
+     * @param plateauReached Whether the climb stopped at the plateau limit.
+     * @param length The length of the climbed tour.
+     */
+    private void recordClimb(ClimbEvent event, int iterations, long proposed, long accepted, boolean plateauReached,
+                             double length) {
+        metrics.add("climb.climbs", 1);
+        metrics.add("climb.iterations", iterations);
+        metrics.add("climb.movesProposed", proposed);
+        metrics.add("climb.movesAccepted", accepted);
+        metrics.add("climb.plateauRestarts", plateauReached ? 1 : 0);
+        if (event != null && event.shouldCommit()) {
+            event.cities = numNodes;
+            event.iterations = iterations;
+            event.evaluations = proposed;
+            event.accepted = accepted;
+            event.plateau = plateauReached;
+            event.length = length;
+            event.commit();
+        }
     }
 
     /**
-     * Generates a neighboring solution by swapping two nodes in the current solution.
+     * Gets the nearest neighbour lists, building them on first use so that concurrent climbs share them.
      *
-     * @param currentSolution The current TSP tour.
-     * @return A neighboring TSP tour.
+     * @return The flat neighbour lists, neighborCount entries per node.
      */
-    
-    private List<Integer> generateNeighborSolution(List<Integer> currentSolution) {
-        List<Integer> neighborSolution = new ArrayList<>(currentSolution);
-        Random rand = new Random();
-        int i, j;
-        do {
-            i = rand.nextInt(numNodes - 2) + 1;
-            j = rand.nextInt(numNodes - 2) + 1;
-        } while (i == j);
-        Collections.swap(neighborSolution, i, j);
-        return neighborSolution;
+    @SuppressWarnings("try")
+    private synchronized int[] candidateNeighbors() {
+        if (neighbors == null && neighborCount > 1 && numNodes > 4) {
+            try (SolverMetrics.Phase phase = metrics.time("neighbors")) {
+                neighbors = new SpatialGrid(x, y).nearestNeighbors(neighborCount);
+            }
+        }
+        return neighbors;
     }
 
     /**
-     * Generates a random initial solution by shuffling node indinces.
+     * Calculates how much the tour length changes if the cities at two positions are swapped.
+     *
+     * @param tour The current TSP tour.
+     * @param i The first position, at least 1.
+     * @param j The second position, greater than i.
+     * @return The new length minus the current length.
+     */
+    private double swapDelta(int[] tour, int i, int j) {
+        int before = tour[i - 1];
+        int first = tour[i];
+        int second = tour[j];
+        int after = tour[(j + 1) % numNodes];
+        if (j == i + 1) {
+            return distance(before, second) + distance(first, after)
+                    - distance(before, first) - distance(second, after);
+        }
+        int afterFirst = tour[i + 1];
+        int beforeSecond = tour[j - 1];
+        return distance(before, second) + distance(second, afterFirst)
+                + distance(beforeSecond, first) + distance(first, after)
+                - distance(before, first) - distance(first, afterFirst)
+                - distance(beforeSecond, second) - distance(second, after);
+    }
+
+    /**
+     * Calculates how much the tour length changes if the segment between two positions is reversed.
+     * Only the two edges at the ends of the segment change.
+     *
+     * @param tour The current TSP tour.
+     * @param i The first position of the segment, at least 1.
+     * @param j The last position of the segment, greater than i.
+     * @return The new length minus the current length.
+     */
+    private double reversalDelta(int[] tour, int i, int j) {
+        int before = tour[i - 1];
+        int first = tour[i];
+        int last = tour[j];
+        int after = tour[(j + 1) % numNodes];
+        return distance(before, last) + distance(first, after) - distance(before, first) - distance(last, after);
+    }
+
+    /**
+     * Reverses the order of the cities between two positions, in place.
      *
-     * @return A random initial TSP tour.
+     * @param tour The TSP tour.
+     * @param i The first position of the segment.
+     * @param j The last position of the segment.
      */
-    private List<Integer> generateRandomSolution() {
-        // Generate a random perm
-        List<Integer> randomSolution = new ArrayList<>();
-        for (int i = 1; i < numNodes; i++) {
-            randomSolution.add(i);
+    private static void reverseSegment(int[] tour, int i, int j) {
+        while (i < j) {
+            int temp = tour[i];
+            tour[i++] = tour[j];
+            tour[j--] = temp;
         }
-        Random rand = new Random();
-        for (int i = numNodes - 2; i > 0; i--) {
-            int j = rand.nextInt(i + 1);
-            if (i != j) {
-                int temp = randomSolution.get(i);
-                randomSolution.set(i, randomSolution.get(j));
-                randomSolution.set(j, temp);
+    }
+
+    /**
+     * Builds the starting tour of a climb as chosen with {@link #setInitialTour}.
+     *
+     * @param random The random stream of the climb.
+     * @return A new initial TSP tour, starting at node 0.
+     */
+    @SuppressWarnings("try")
+    private int[] initialTour(SplittableRandom random) {
+        try (SolverMetrics.Phase phase = metrics.time("init")) {
+            if (numNodes < 3 || initMode.equals("random")) {
+                return generateRandomSolution(random);
+            }
+            if (initMode.equals("nearest")) {
+                return TourResult.startAtZero(new SpatialGrid(x, y).nearestNeighborTour(random.nextInt(numNodes)));
+            }
+            return constructedTour().clone();
+        }
+    }
+
+    /**
+     * Gets the Hilbert or greedy edge tour, building it on first use so that concurrent climbs share it.
+     *
+     * @return The tour, starting at node 0.
+     */
+    private synchronized int[] constructedTour() {
+        if (constructedTour == null) {
+            if (initMode.equals("hilbert")) {
+                constructedTour = TourResult.startAtZero(TourConstruction.hilbert(x, y));
+            } else {
+                int k = Math.min(neighborCount > 1 ? neighborCount : DEFAULT_NEIGHBORS, numNodes - 1);
+                int[] candidates = k == neighborCount ? candidateNeighbors() : null;
+                if (candidates == null) {
+                    candidates = new SpatialGrid(x, y).nearestNeighbors(k);
+                }
+                constructedTour = TourResult.startAtZero(TourConstruction.greedyEdge(x, y, distances, candidates, k));
             }
         }
-        // Insert the starting node 0
-        randomSolution.add(0, 0);
-        randomSolution.add(0);
+        return constructedTour;
+    }
+
+    /**
+     * Generates a random initial solution by shuffling node indinces.
+     *
+     * @param random The random stream of the climb.
+     * @return A random initial TSP tour, starting at node 0.
+     */
+    private int[] generateRandomSolution(SplittableRandom random) {
+        // Generate a random perm, keeping the starting node 0 in front
+        int[] randomSolution = new int[numNodes];
+        for (int i = 0; i < numNodes; i++) {
+            randomSolution[i] = i;
+        }
+        for (int i = numNodes - 1; i > 1; i--) {
+            int j = random.nextInt(i) + 1;
+            int temp = randomSolution[i];
+            randomSolution[i] = randomSolution[j];
+            randomSolution[j] = temp;
+        }
         return randomSolution;
     }
 
     /**
      * Calculates the total length of a TSP tour based on the given distances and tour order.
      *
-     * @param tour The order in which cites are visited in the tour.
+     * @param tour The order in which cites are visited in the tour, returning to the first city at the end.
      * @return The total length olf the tour.
      */
-    private double calculateTourLength(List<Integer> tour) {
-        double totalLength = 0.0;
-        for (int i = 0; i < tour.size() - 1; i++) {
-            int city1 = tour.get(i);
-            int city2 = tour.get(i + 1);
-            // Use the Euclidean distance between two cities as the edge weight
-            double x1 = coordinates[city1][0];
-            double y1 = coordinates[city1][1];
-            double x2 = coordinates[city2][0];
-            double y2 = coordinates[city2][1];
-            double distance = calculateDistance(x1, y1, x2, y2);
-            totalLength += distance;
-        }
-        return totalLength;
-    }
-
-    /**
-     * calc distance
-     * @param x1 The x-coordinate of the first point.
-     * @param y1 The y-coordinate of the first point.
-     * @param x2 The x-coordinate of the second point.
-     * @param y2 The y-coordinate of the second point.
-     * @return The distance between the two points.
-     */
-    private double calculateDistance(double x1, double y1, double x2, double y2) {
-        double deltaX = x2 - x1;
-        double deltaY = y2 - y1;
-        return Math.sqrt(deltaX * deltaX + deltaY * deltaY);
+    double calculateTourLength(int[] tour) {
+        return Geometry.tourLength(distances, tour);
+    }
+
+    /**
+     * Calculates the distance between two cities.
+     *
+     * @param city1 The first city.
+     * @param city2 The second city.
+     * @return The Euclidean distance between them.
+     */
+    private double distance(int city1, int city2) {
+        return distances.distance(city1, city2);
     }
 
     
@@ -12,96 +12,657 @@
  *  
  */
 
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Arrays;
-import java.util.List;
-import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
+/**
+ * Exact solver for the Traveling Salesman Problem using the Held-Karp dynamic programming recurrence.
+ * An instance of this class solves one problem instance; to solve many instances concurrently,
+ * create one solver per instance or use a {@link BatchSolver}.
+ */
 public class dynaTSP {
-    private static int cityCount;
-    private static double[][] distances;
-    private static double[][] table;    
-    private static final double BIG_NUMBER = 9999999.99;
-    private static List<Node> cityList;
-    private static List<Integer> optimalTour = new ArrayList<>();
-    private static double optimalCost = BIG_NUMBER; 
-    private static int[][] backtrack;
-    private static int currentStep;
+    static final double BIG_NUMBER = 9999999.99;
+    private static final int PARALLEL_THRESHOLD = 256;
+    private static final int INCUMBENT_ITERATIONS = 200000;
+    private static final int INCUMBENT_PLATEAU = 20000;
+    private static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    private final int cityCount;
+    private final double[][] distances;
+    private final TspTable table;
+    private double optimalCost = BIG_NUMBER;
+    private int currentStep;
+    private SubsetKernel kernel;
+    private double[][] transposedDistances;
+    private CheckpointStore checkpoints;
+    private long checkpointIntervalNanos;
+    private long lastCheckpointTime;
+    private long timeLimitMillis;
+    private long deadline = NO_DEADLINE;
+    private volatile boolean timedOut;
+    private int completedSize;
+    private ProgressListener progressListener;
+    private ProgressTracker progress;
+    private TourResult bestPartialTour;
+    private SolverMetrics metrics;
+
+    /**
+     * Creates a solver for one instance.
+     *
+     * @param distances The distance between every pair of cities, with BIG_NUMBER on the diagonal.
+     * @param table A table sized for the number of cities. It is reset before solving and is not
+     *              closed by the solver, so it can be reused for another instance of the same size.
+     */
+    public dynaTSP(double[][] distances, TspTable table) {
+        this.cityCount = distances.length;
+        this.distances = distances;
+        this.table = table;
+        setMetrics(new SolverMetrics("dynaTSP"));
+    }
 
     /**
      * Entry point
-     * @param args  args[0] is the input file containing city coords
+     * @param args  args[0] is the input file containing city coords,
+     *              optionally followed by --threads N (number of worker threads, default 1),
+     *              --table dense|compact|compact-float|mapped (table layout, default compact),
+     *              --scratch DIR (directory for the mapped table, default the system temp directory),
+     *              --checkpoint DIR (save progress at layer boundaries into DIR),
+     *              --checkpoint-every SECONDS (minimum time between checkpoints, default 300),
+     *              --resume (continue from the checkpoint in DIR),
+     *              --pruned (only keep states that can beat a climbTSP tour, in hash maps instead of a table),
+     *              --branch-and-bound (solve with BranchAndBound instead of a table, for 30 to 60 cities),
+     *              --kernel scalar|vector (inner loop, vector needs --add-modules jdk.incubator.vector),
+     *              --budget MS (stop after this many milliseconds and complete the best partial tour greedily),
+     *              --progress (print progress to standard error while solving),
+     *              --cache (keep a binary copy of the instance next to the input file for faster loading),
+     *              --distances auto|dense|packed|lazy (how distances are computed before the matrix is built),
+     *              --metrics FILE (write phase times and counters as JSON to FILE, or to standard error for -)
+     *              and --compare (also run the single threaded scalar solver, check the tours match
+     *              and report the speedup)
      * 
      */
+    @SuppressWarnings("try")
     public static void main(String[] args) {
-        readInput(args[0]);
-        calculateDistances();
-        initializeTable();
+        if (args.length < 1) {
+            System.out.println("Usage: java dynaTSP <input_file> [--threads N] "
+                    + "[--table dense|compact|compact-float|mapped] [--scratch DIR] "
+                    + "[--checkpoint DIR [--checkpoint-every SECONDS] [--resume]] [--pruned] [--branch-and-bound] "
+                    + "[--kernel scalar|vector] [--budget MS] [--progress] [--cache] [--distances auto|dense|packed|lazy] [--metrics FILE] [--compare]");
+            return;
+        }
+        int threads = 1;
+        String tableMode = "compact";
+        Path scratch = Paths.get(System.getProperty("java.io.tmpdir"));
+        Path checkpointDirectory = null;
+        long checkpointSeconds = 300;
+        boolean resume = false;
+        boolean compare = false;
+        boolean pruned = false;
+        boolean branchAndBound = false;
+        boolean vector = false;
+        long budgetMs = 0;
+        boolean progress = false;
+        boolean cache = false;
+        String distanceMode = "auto";
+        String metricsFile = null;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--threads") && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--table") && i + 1 < args.length) {
+                tableMode = args[++i];
+            } else if (args[i].equals("--scratch") && i + 1 < args.length) {
+                scratch = Paths.get(args[++i]);
+            } else if (args[i].equals("--checkpoint") && i + 1 < args.length) {
+                checkpointDirectory = Paths.get(args[++i]);
+            } else if (args[i].equals("--checkpoint-every") && i + 1 < args.length) {
+                checkpointSeconds = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--resume")) {
+                resume = true;
+            } else if (args[i].equals("--compare")) {
+                compare = true;
+            } else if (args[i].equals("--pruned")) {
+                pruned = true;
+            } else if (args[i].equals("--branch-and-bound")) {
+                branchAndBound = true;
+            } else if (args[i].equals("--kernel") && i + 1 < args.length) {
+                vector = args[++i].equals("vector");
+            } else if (args[i].equals("--budget") && i + 1 < args.length) {
+                budgetMs = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--progress")) {
+                progress = true;
+            } else if (args[i].equals("--cache")) {
+                cache = true;
+            } else if (args[i].equals("--distances") && i + 1 < args.length) {
+                distanceMode = args[++i];
+            } else if (args[i].equals("--metrics") && i + 1 < args.length) {
+                metricsFile = args[++i];
+            } else {
+                System.out.println("Unknown option: " + args[i]);
+                return;
+            }
+        }
+        if (resume && checkpointDirectory == null) {
+            System.out.println("--resume needs a --checkpoint directory");
+            return;
+        }
+
+        SolverMetrics metrics = new SolverMetrics("dynaTSP");
+        TspInstance instance;
+        try (SolverMetrics.Phase phase = metrics.time("load")) {
+            instance = readInput(args[0], cache);
+        }
+        double[][] distances;
+        try (SolverMetrics.Phase phase = metrics.time("distances")) {
+            distances = calculateDistances(DistanceOracle.create(instance, distanceMode));
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            return;
+        }
+        if (pruned && distances.length > PrunedHeldKarp.MAX_CITIES) {
+            System.out.println("Too many cities for the pruned solver, solving with branch and bound instead");
+            pruned = false;
+            branchAndBound = true;
+        }
+        if (pruned) {
+            solvePrunedAndReport(instance, distances);
+            return;
+        }
+        if (branchAndBound) {
+            solveBranchAndBoundAndReport(instance, distances, threads, budgetMs, progress, metrics);
+            if (metricsFile != null) {
+                try {
+                    metrics.writeJson(metricsFile);
+                } catch (IOException e) {
+                    System.out.println("Error writing the metrics: " + e.getMessage());
+                }
+            }
+            return;
+        }
+        TspTable table = createTable(tableMode, distances.length, scratch);
+        if (table == null) {
+            System.exit(1);
+        }
+        try {
+            solveAndReport(distances, table, threads, vector, compare, checkpointDirectory, checkpointSeconds, resume,
+                    budgetMs, progress, metrics);
+        } catch (IOException e) {
+            System.out.println("Checkpoint failed: " + e.getMessage());
+            System.exit(1);
+        } finally {
+            table.close();
+        }
+        if (metricsFile != null) {
+            try {
+                metrics.writeJson(metricsFile);
+            } catch (IOException e) {
+                System.out.println("Error writing the metrics: " + e.getMessage());
+            }
+        }
+    }
 
+    /**
+     * Solves an instance and prints the result.
+     *
+     * @param distances The distance between every pair of cities.
+     * @param table The table to solve in.
+     * @param threads The number of worker threads to use.
+     * @param vector Whether to use the vector kernel.
+     * @param compare Whether to also run the single threaded scalar solver and report the speedup.
+     * @param checkpointDirectory The directory to save checkpoints in, or null to not checkpoint.
+     * @param checkpointSeconds The minimum time between two checkpoints.
+     * @param resume Whether to continue from the checkpoint in the directory.
+     * @param budgetMs The time limit in milliseconds, or 0 for none.
+     * @param progress Whether to print progress to standard error.
+     * @param metrics The metrics the solve reports to; the comparison run is not counted.
+     * @throws IOException If a checkpoint cannot be read or written.
+     */
+    private static void solveAndReport(double[][] distances, TspTable table, int threads, boolean vector,
+                                       boolean compare, Path checkpointDirectory, long checkpointSeconds,
+                                       boolean resume, long budgetMs, boolean progress, SolverMetrics metrics)
+            throws IOException {
+        TourResult sequential = null;
+        double sequentialTime = 0;
+        if (compare && (threads > 1 || vector)) {
+            long startTime = System.nanoTime();
+            sequential = new dynaTSP(distances, table).solve(1);
+            sequentialTime = (double) (System.nanoTime() - startTime) / 1000000000;
+        }
+
+        dynaTSP solver = new dynaTSP(distances, table);
+        solver.setMetrics(metrics);
+        solver.setTimeLimit(budgetMs);
+        if (progress) {
+            solver.setProgressListener(System.err::println);
+        }
+        boolean vectorUsed = vector && solver.useVectorKernel();
+        if (vector && !vectorUsed) {
+            System.out.println("Vector kernel unavailable (needs the compact table and "
+                    + "--add-modules jdk.incubator.vector), using the scalar kernel");
+        }
         long startTime = System.nanoTime();
-        solveTSP();
-        constructOptimalPath();
+        TourResult result;
+        if (checkpointDirectory != null) {
+            CheckpointStore checkpoints = new CheckpointStore(checkpointDirectory, distances.length,
+                    CheckpointStore.hash(distances));
+            result = solver.solve(threads, checkpoints, checkpointSeconds, resume);
+        } else {
+            result = solver.solve(threads);
+        }
 
         long endTime = System.nanoTime();
         double executionTime = (double) (endTime - startTime) / 1000000000;
-        System.out.println("Optimal tour cost = " + optimalCost);
+        if (result == null) {
+            System.out.println("No tour found");
+            return;
+        }
+        if (solver.isTimedOut()) {
+            System.out.println("Time limit reached after layer " + solver.completedSize + " of " + distances.length
+                    + ", tour completed greedily");
+            System.out.println("Best Tour: " + result);
+            System.out.println("Best tour cost = " + result.getCost());
+        } else {
+            System.out.println("Optimal Tour: " + result);
+            System.out.println("Optimal tour cost = " + result.getCost());
+        }
         System.out.println("Total execution time: " + executionTime + " seconds");
+
+        if (sequential != null) {
+            System.out.println("Single threaded execution time: " + sequentialTime + " seconds");
+            System.out.println("Speedup with " + threads + " threads" + (vectorUsed ? " and the vector kernel" : "")
+                    + ": " + (sequentialTime / executionTime));
+            if (sequential.getCost() != result.getCost()
+                    || !Arrays.equals(sequential.getTour(), result.getTour())) {
+                System.out.println("WARNING: result differs from the single threaded scalar result");
+            }
+        }
     }
 
     /**
-     * Given a file this program will read will populate nodes 
-     * @param filename to be read
+     * Switches the inner loop to the SIMD {@link VectorKernel}. The kernel works directly on the
+     * arrays of a compact double table and is loaded reflectively, so this falls back to the
+     * scalar loop when the table has another layout or the Vector API module is not present.
+     *
+     * @return true if the vector kernel will be used; false otherwise.
      */
-    private static void readInput(String filename) {
-        cityList = new ArrayList<>();
+    public boolean useVectorKernel() {
+        if (table.getClass() != CompactTable.class
+                || !ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            return false;
+        }
         try {
-            Scanner fileScanner = new Scanner(new File(filename));
-            cityCount = fileScanner.nextInt();
-            fileScanner.nextLine();
-            distances = new double[cityCount][cityCount];
-            table = new double[cityCount][1 << cityCount];
-            backtrack = new int[cityCount][1 << cityCount];
-
-            for (int i = 0; i < cityCount; i++) {
-                Arrays.fill(backtrack[i], -1);
+            kernel = (SubsetKernel) Class.forName("VectorKernel").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return false;
+        }
+        transposedDistances = new double[cityCount][cityCount - 1];
+        for (int from = 1; from < cityCount; from++) {
+            for (int to = 0; to < cityCount; to++) {
+                transposedDistances[to][from - 1] = distances[from][to];
             }
+        }
+        return true;
+    }
 
-            for (int i = 0; i < cityCount; i++) {
-                String line = fileScanner.nextLine();
-                String[] coordData = line.split("\\s+");
-                if (coordData.length >= 2) {
-                    int x = Integer.parseInt(coordData[0]);
-                    int y = Integer.parseInt(coordData[1]);
-                    Node location = new Node(x, y);
-                    location.setIdentifier(i);
-                    cityList.add(location);
-                }
+    /**
+     * Solves an instance with {@link PrunedHeldKarp}, seeded with a climbTSP tour, and prints the result.
+     *
+     * @param instance The cities.
+     * @param distances The distance between every pair of cities.
+     */
+    private static void solvePrunedAndReport(TspInstance instance, double[][] distances) {
+        long startTime = System.nanoTime();
+        TourResult incumbent = climbIncumbent(instance, distances);
+        if (incumbent != null) {
+            System.out.println("Incumbent cost from climbTSP = " + incumbent.getCost());
+        }
+        PrunedHeldKarp solver = new PrunedHeldKarp(distances);
+        TourResult result = solver.solve(incumbent);
+        double executionTime = (double) (System.nanoTime() - startTime) / 1000000000;
+
+        System.out.println("States kept: " + solver.getStatesStored() + " of " + solver.getDenseStates());
+        System.out.println("Optimal Tour: " + result);
+        System.out.println("Optimal tour cost = " + result.getCost());
+        System.out.println("Total execution time: " + executionTime + " seconds");
+    }
+
+    /**
+     * Solves an instance with {@link BranchAndBound}, seeded with a climbTSP tour, and prints the result.
+     *
+     * @param instance The cities.
+     * @param distances The distance between every pair of cities.
+     * @param threads The number of worker threads to use.
+     * @param budgetMs The time limit in milliseconds, or 0 for none.
+     * @param progress Whether to print progress to standard error.
+     * @param metrics The metrics the solve reports to.
+     */
+    private static void solveBranchAndBoundAndReport(TspInstance instance, double[][] distances, int threads,
+                                                     long budgetMs, boolean progress, SolverMetrics metrics) {
+        long startTime = System.nanoTime();
+        TourResult incumbent = climbIncumbent(instance, distances);
+        if (incumbent != null) {
+            System.out.println("Incumbent cost from climbTSP = " + incumbent.getCost());
+        }
+        BranchAndBound solver = new BranchAndBound(distances);
+        solver.setMetrics(metrics);
+        solver.setTimeLimit(budgetMs);
+        if (progress) {
+            solver.setProgressListener(System.err::println);
+        }
+        TourResult result = solver.solve(threads, incumbent);
+        double executionTime = (double) (System.nanoTime() - startTime) / 1000000000;
+
+        System.out.println("Subproblems solved: " + metrics.getCounter("bnb.nodes"));
+        if (solver.isTimedOut()) {
+            double gap = (result.getCost() - solver.getLowerBound()) / result.getCost();
+            System.out.println("Time limit reached, lower bound = " + solver.getLowerBound()
+                    + String.format(" (gap %.3f%%)", 100 * gap));
+            System.out.println("Best Tour: " + result);
+            System.out.println("Best tour cost = " + result.getCost());
+        } else {
+            System.out.println("Optimal Tour: " + result);
+            System.out.println("Optimal tour cost = " + result.getCost());
+        }
+        System.out.println("Total execution time: " + executionTime + " seconds");
+    }
+
+    /**
+     * Runs the hill climber to get an upper bound for the pruned solver.
+     *
+     * @param instance The cities.
+     * @param distances The distance between every pair of cities, used to cost the tour.
+     * @return The climbed tour, or null if there are too few cities to climb.
+     */
+    private static TourResult climbIncumbent(TspInstance instance, double[][] distances) {
+        int cityCount = instance.size();
+        if (cityCount < 4) {
+            return null;
+        }
+        int[] tour = new climbTSP(instance, INCUMBENT_ITERATIONS, INCUMBENT_PLATEAU, climbTSP.DEFAULT_NEIGHBORS)
+                .solve().getTour();
+        return new TourResult(tour, Geometry.tourLength(distances, tour));
+    }
+
+    /**
+     * Limits the time a solve may take. When the limit is reached the solve stops at the next
+     * chunk of subsets and returns the cheapest path of the deepest completed layer, completed
+     * by visiting the nearest unvisited city until none are left.
+     *
+     * @param millis The time limit in milliseconds, or 0 for none.
+     */
+    public void setTimeLimit(long millis) {
+        timeLimitMillis = millis;
+    }
+
+    /**
+     * Sets the listener told about the cost of the best tour so far and the state rate after
+     * every layer. Reporting needs the layered solver.
+     *
+     * @param listener The listener, or null for none.
+     */
+    public void setProgressListener(ProgressListener listener) {
+        progressListener = listener;
+    }
+
+    /**
+     * Sets the metrics solves report their phase times and state counters to. Every solver starts
+     * with metrics of its own.
+     *
+     * @param metrics The metrics, possibly shared with other solvers.
+     */
+    public void setMetrics(SolverMetrics metrics) {
+        this.metrics = metrics;
+        metrics.perSecond("dp.statesPerSecond", "dp.states", "search");
+        metrics.perSecond("dp.relaxationsPerSecond", "dp.relaxations", "search");
+    }
+
+    /**
+     * @return The phase times and state counters of all solves so far.
+     */
+    public SolverMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Tells whether the last solve ran out of time, in which case its tour need not be optimal.
+     *
+     * @return true if the time limit was reached; false otherwise.
+     */
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * Solves the instance.
+     *
+     * @param threads The number of worker threads to use.
+     * @return The optimal tour, the best tour found in time if the time limit was reached,
+     *         or null if there is no tour.
+     */
+    @SuppressWarnings("try")
+    public TourResult solve(int threads) {
+        try (SolverMetrics.Phase phase = metrics.time("table")) {
+            initializeTable();
+        }
+        startClock(2);
+        try (SolverMetrics.Phase phase = metrics.time("search")) {
+            solve(threads, 2);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return finishSolve();
+    }
+
+    /**
+     * Starts timing a solve.
+     *
+     * @param firstSize The size of the first layer to solve.
+     */
+    private void startClock(int firstSize) {
+        deadline = timeLimitMillis > 0 ? System.nanoTime() + timeLimitMillis * 1000000L : NO_DEADLINE;
+        timedOut = false;
+        completedSize = firstSize - 1;
+        progress = ProgressTracker.of("dynaTSP", "states", progressListener);
+        bestPartialTour = null;
+    }
+
+    /**
+     * Builds the tour once the table is filled or the time limit was reached.
+     *
+     * @return The tour, or null if there is no tour.
+     */
+    @SuppressWarnings("try")
+    private TourResult finishSolve() {
+        TourResult result;
+        try (SolverMetrics.Phase phase = metrics.time("tour")) {
+            result = timedOut ? constructAnytimePath(completedSize) : constructOptimalPath();
+        }
+        if (timedOut && bestPartialTour != null && (result == null || bestPartialTour.getCost() < result.getCost())) {
+            result = bestPartialTour;
+        }
+        if (progress != null) {
+            progress.finish(result != null ? result.getCost() : Double.NaN);
+        }
+        return result;
+    }
+
+    /**
+     * Solves the instance, saving checkpoints at layer boundaries.
+     *
+     * @param threads The number of worker threads to use.
+     * @param checkpoints Where the checkpoints are saved.
+     * @param checkpointSeconds The minimum time between two checkpoints.
+     * @param resume Whether to continue from the last saved checkpoint.
+     * @return The optimal tour, the best tour found in time if the time limit was reached,
+     *         or null if there is no tour. The checkpoint is kept if the time limit was reached.
+     * @throws IOException If a checkpoint cannot be read or written.
+     */
+    @SuppressWarnings("try")
+    TourResult solve(int threads, CheckpointStore checkpoints, long checkpointSeconds, boolean resume)
+            throws IOException {
+        try (SolverMetrics.Phase phase = metrics.time("table")) {
+            initializeTable();
+        }
+        int firstSize = 2;
+        this.checkpoints = checkpoints;
+        checkpointIntervalNanos = checkpointSeconds * 1000000000L;
+        if (resume) {
+            firstSize = checkpoints.lastSavedSize() + 1;
+            checkpoints.restore(table);
+            if (firstSize > 2) {
+                System.out.println("Resuming after layer " + (firstSize - 1) + " of " + cityCount);
+            } else {
+                System.out.println("No checkpoint found, starting from the beginning");
             }
-            fileScanner.close();
-        } catch (FileNotFoundException e) {
+        } else {
+            checkpoints.clear();
+        }
+        lastCheckpointTime = System.nanoTime();
+        startClock(firstSize);
+        try (SolverMetrics.Phase phase = metrics.time("search")) {
+            solve(threads, firstSize);
+        }
+        TourResult result = finishSolve();
+        if (!timedOut) {
+            checkpoints.clear();
+        }
+        return result;
+    }
+
+    /**
+     * Reads an instance in the plain, TSPLIB or cached binary format, exiting if it cannot be read.
+     *
+     * @param filename The file to read.
+     * @param cache Whether to read and write the binary cache next to the file.
+     * @return The instance.
+     */
+    static TspInstance readInput(String filename, boolean cache) {
+        try {
+            Path path = Paths.get(filename);
+            return cache ? InstanceLoader.loadCached(path) : InstanceLoader.load(path);
+        } catch (NoSuchFileException e) {
             System.out.println("File not found");
-            System.exit(1);
+        } catch (IOException e) {
+            System.out.println("Could not read " + filename + ": " + e.getMessage());
+        }
+        System.exit(1);
+        return null;
+    }
+
+    /**
+     * Allocates the dynamic programming table in the requested layout.
+     * The memory needed is printed first, and the solve is refused if the table
+     * cannot be indexed or does not fit into the free heap.
+     *
+     * @param mode The table layout: dense, compact, compact-float or mapped.
+     * @param cityCount The number of cities.
+     * @param scratch The directory the mapped table is created in.
+     * @return The table, or null if it could not be allocated.
+     */
+    static TspTable createTable(String mode, int cityCount, Path scratch) {
+        if (mode.equals("mapped")) {
+            return createMappedTable(cityCount, scratch);
+        }
+        long requiredBytes;
+        long cells;
+        if (mode.equals("dense")) {
+            requiredBytes = DenseTable.requiredBytes(cityCount);
+            cells = 1L << cityCount;
+        } else if (mode.equals("compact")) {
+            requiredBytes = CompactTable.requiredBytes(cityCount, Double.BYTES);
+            cells = CompactTable.cellCount(cityCount);
+        } else if (mode.equals("compact-float")) {
+            requiredBytes = CompactTable.requiredBytes(cityCount, Float.BYTES);
+            cells = CompactTable.cellCount(cityCount);
+        } else {
+            System.out.println("Unknown table layout: " + mode);
+            return null;
+        }
+
+        Runtime runtime = Runtime.getRuntime();
+        long availableBytes = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+        System.out.println("DP table (" + mode + ") needs " + toMegabytes(requiredBytes) + " MB, "
+                + toMegabytes(availableBytes) + " MB available");
+
+        if (cityCount > 31 || cells > Integer.MAX_VALUE - 8) {
+            System.out.println("Too many cities for the " + mode + " table layout");
+            return null;
+        }
+        if (requiredBytes > availableBytes) {
+            System.out.println("Not enough memory for the DP table, increase the heap size with -Xmx");
+            return null;
+        }
+
+        if (mode.equals("dense")) {
+            return new DenseTable(cityCount);
+        } else if (mode.equals("compact")) {
+            return new CompactTable(cityCount);
+        } else {
+            return new CompactFloatTable(cityCount);
+        }
+    }
+
+    /**
+     * Creates a table backed by memory-mapped files, after checking that the scratch directory
+     * has room for it. Only a small part of the table lives on the heap.
+     *
+     * @param cityCount The number of cities.
+     * @param scratch The directory the table files are created in.
+     * @return The table, or null if it could not be created.
+     */
+    private static TspTable createMappedTable(int cityCount, Path scratch) {
+        long requiredBytes = MappedTable.requiredBytes(cityCount);
+        long availableBytes;
+        try {
+            availableBytes = Files.getFileStore(scratch).getUsableSpace();
+        } catch (IOException e) {
+            System.out.println("Cannot use scratch directory " + scratch + ": " + e.getMessage());
+            return null;
+        }
+        System.out.println("DP table (mapped) needs " + toMegabytes(requiredBytes) + " MB of disk, "
+                + toMegabytes(availableBytes) + " MB available in " + scratch);
+
+        if (cityCount > 31) {
+            System.out.println("Too many cities for the mapped table layout");
+            return null;
+        }
+        if (requiredBytes > availableBytes) {
+            System.out.println("Not enough disk space for the DP table, choose another --scratch directory");
+            return null;
         }
+        return new MappedTable(cityCount, scratch);
+    }
+
+    /**
+     * Converts a size in bytes to whole megabytes.
+     *
+     * @param bytes The size in bytes.
+     * @return The size in megabytes, rounded up.
+     */
+    private static long toMegabytes(long bytes) {
+        return (bytes + (1 << 20) - 1) >> 20;
     }
 
     /**
      * calculates pairwise distancs between all citie
+     * @param oracle the distance between every pair of cities
+     * @return the distance matrix the solver works on, BIG_NUMBER between a city and itself
      */
-    private static void calculateDistances() {
+    static double[][] calculateDistances(DistanceOracle oracle) {
+        int cityCount = oracle.size();
+        double[][] distances = new double[cityCount][cityCount];
         for (int i = 0; i < cityCount; i++) {
             for (int j = 0; j < cityCount; j++) {
-                if (i == j) {
-                    distances[i][j] = BIG_NUMBER;
-                } else {
-                    int deltaX = cityList.get(j).getPosX() - cityList.get(i).getPosX();
-                    int deltaY = cityList.get(j).getPosY() - cityList.get(i).getPosY();
-                    double distance = Math.sqrt(deltaX * deltaX + deltaY * deltaY);
-                    distances[i][j] = distance;
-                }
+                distances[i][j] = i == j ? BIG_NUMBER : oracle.distance(i, j);
             }
         }
+        return distances;
     }
 
     /**
@@ -109,13 +670,8 @@ public class dynaTSP {
      * Initially, all distances are set to a large value @param BIG_NUMBER.
      */
 
-    private static void initializeTable() {
-        for (int i = 0; i < cityCount; i++) {
-            for (int j = 0; j < (1 << cityCount); j++) {
-                table[i][j] = BIG_NUMBER;
-            }
-        }
-        table[0][1] = 0;
+    private void initializeTable() {
+        table.reset();
     }
 
     
@@ -123,17 +679,208 @@ public class dynaTSP {
      * Main method responsible for solving the Traveling Salesman Problem (TSP) using dynamic programming.
      * SolveTSP and helper methods 
      */
-    private static void solveTSP() {
+    private void solveTSP() {
         for (int subset = 1; subset < (1 << cityCount); subset += 2) {
             processSubset(subset);
         }
     }
 
+    /**
+     * Fills the table, layer by layer if several threads are used, checkpoints are taken,
+     * the solve is resumed, a time limit or progress listener is set or the table requires it.
+     *
+     * @param threads The number of worker threads to use.
+     * @param firstSize The size of the first layer to solve; smaller layers are already in the table.
+     * @throws IOException If a checkpoint cannot be written.
+     */
+    private void solve(int threads, int firstSize) throws IOException {
+        if (threads > 1 || firstSize > 2 || checkpoints != null || table.requiresLayerOrder()
+                || deadline != NO_DEADLINE || progress != null) {
+            solveTSPByLayer(threads, firstSize);
+        } else {
+            solveTSP();
+            for (int size = 2; size <= cityCount; size++) {
+                recordLayer(size, binomial(cityCount - 1, size - 1), null);
+            }
+        }
+    }
+
+    /**
+     * Solves the TSP with the same recurrence as {@link #solveTSP()}, but processes the subsets
+     * layer by layer. Every subset of size k only reads entries for subsets of size k - 1, so all
+     * subsets within a layer are independent and can be split across a fork-join pool.
+     * Each subset only writes its own column of the table, so the result is identical to the
+     * single threaded solver. If the time limit is reached during a layer, the solve stops and
+     * the layer is left incomplete.
+     *
+     * @param threads The number of worker threads to use.
+     * @param firstSize The size of the first layer to solve.
+     * @throws IOException If a checkpoint cannot be written.
+     */
+    private void solveTSPByLayer(int threads, int firstSize) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            for (int size = firstSize; size <= cityCount; size++) {
+                LayerEvent event = SolverMetrics.beginLayer();
+                int[] layer = subsetsOfSize(cityCount, size);
+                table.startLayer(size);
+                pool.invoke(new LayerTask(layer, 0, layer.length));
+                if (timedOut) {
+                    break;
+                }
+                table.finishLayer(size);
+                completedSize = size;
+                recordLayer(size, layer.length, event);
+                if (progress != null) {
+                    TourResult tour = constructAnytimePath(size);
+                    if (tour != null && (bestPartialTour == null || tour.getCost() < bestPartialTour.getCost())) {
+                        bestPartialTour = tour;
+                    }
+                    progress.update((long) layer.length * (size - 1),
+                            bestPartialTour != null ? bestPartialTour.getCost() : Double.NaN);
+                }
+                checkpointIfDue(size);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Adds the work of a completed layer to the metrics and commits its Flight Recorder event.
+     * Every subset of the layer has an entry for each city but city 0, and each entry is relaxed
+     * over every other city of the subset, so the counts follow from the layer size alone and
+     * nothing is counted in the inner loop.
+     *
+     * @param size The size of the subsets in the layer.
+     * @param subsets The number of subsets in the layer.
+     * @param event The event, begun when the layer started, or null if there is none.
+     */
+    private void recordLayer(int size, long subsets, LayerEvent event) {
+        long states = subsets * (size - 1);
+        long bytes = states * table.bytesPerEntry();
+        metrics.add("dp.layers", 1);
+        metrics.add("dp.subsets", subsets);
+        metrics.add("dp.states", states);
+        metrics.add("dp.relaxations", states * (size - 1));
+        metrics.max("dp.peakLayerBytes", bytes);
+        if (event != null && event.shouldCommit()) {
+            event.size = size;
+            event.subsets = subsets;
+            event.states = states;
+            event.bytes = bytes;
+            event.commit();
+        }
+    }
+
+    /**
+     * Saves a checkpoint after a layer if checkpoints are enabled and the interval has passed.
+     * The last layer is never saved, as the solve is about to finish.
+     *
+     * @param size The size of the subsets in the layer just completed.
+     * @throws IOException If the checkpoint cannot be written.
+     */
+    private void checkpointIfDue(int size) throws IOException {
+        long now = System.nanoTime();
+        if (checkpoints == null || size == cityCount || now - lastCheckpointTime < checkpointIntervalNanos) {
+            return;
+        }
+        checkpoints.save(table, size);
+        lastCheckpointTime = System.nanoTime();
+        System.out.println("Checkpoint saved after layer " + size + " of " + cityCount + " in "
+                + (lastCheckpointTime - now) / 1000000 + " ms");
+    }
+
+    /**
+     * Lists every subset of the given size that contains the starting city.
+     * The other cities are enumerated in increasing numeric order using Gosper's hack.
+     *
+     * @param cityCount The number of cities.
+     * @param size The number of cities in each subset, including the starting city.
+     * @return The subsets, in increasing numeric order.
+     */
+    static int[] subsetsOfSize(int cityCount, int size) {
+        int others = size - 1;
+        int[] subsets = new int[(int) binomial(cityCount - 1, others)];
+        int limit = 1 << (cityCount - 1);
+        int combination = (1 << others) - 1;
+        for (int i = 0; i < subsets.length; i++) {
+            subsets[i] = (combination << 1) | 1;
+            if (combination == 0) {
+                break;
+            }
+            int lowest = combination & -combination;
+            int ripple = combination + lowest;
+            combination = (((ripple ^ combination) >>> 2) / lowest) | ripple;
+            if (combination >= limit) {
+                break;
+            }
+        }
+        return subsets;
+    }
+
+    /**
+     * Calculates the binomial coefficient n choose k.
+     *
+     * @param n The number of items.
+     * @param k The number of items chosen.
+     * @return The number of ways to choose k of the n items.
+     */
+    private static long binomial(int n, int k) {
+        long result = 1;
+        for (int i = 1; i <= k; i++) {
+            result = result * (n - k + i) / i;
+        }
+        return result;
+    }
+
+    /**
+     * Fork-join task processing a range of subsets from a single layer.
+     */
+    private class LayerTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] layer;
+        private final int from;
+        private final int to;
+
+        LayerTask(int[] layer, int from, int to) {
+            this.layer = layer;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_THRESHOLD) {
+                if (timedOut) {
+                    return;
+                }
+                if (deadline != NO_DEADLINE && System.nanoTime() - deadline >= 0) {
+                    timedOut = true;
+                    return;
+                }
+                for (int i = from; i < to; i++) {
+                    processSubset(layer[i]);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new LayerTask(layer, from, middle), new LayerTask(layer, middle, to));
+        }
+    }
+
     /**
      * Processes a particular subset of cities for the TSP.
      * @param subset The current subset of cities to process.
      */
-    private static void processSubset(int subset) {
+    private void processSubset(int subset) {
+        if (kernel != null) {
+            CompactTable compact = (CompactTable) table;
+            kernel.processSubset(compact.costArray(), compact.predecessorArray(), transposedDistances,
+                    distances[0], cityCount - 1, subset);
+            return;
+        }
         for (int currentCity = 1; currentCity < cityCount; currentCity++) {
             if (isCityInSubset(currentCity, subset)) {
                 updateTableForCity(subset, currentCity);
@@ -161,7 +908,7 @@ public class dynaTSP {
      * @param subset The subset being processed.
      * @param currentCity The city for which the table needs to be updated.
      */
-    private static void updateTableForCity(int subset, int currentCity) {
+    private void updateTableForCity(int subset, int currentCity) {
         for (int previousCity = 0; previousCity < cityCount; previousCity++) {
             if (isCityInSubset(previousCity, subset) && canTravelBetween(previousCity, currentCity)) {
                 double potentialDistance = calculatePotentialDistance(previousCity, currentCity, subset);
@@ -177,7 +924,7 @@ public class dynaTSP {
      * @param city2 The destination city.
      * @return true if they are different and can be traveled between; false otherwise.
      */
-    private static boolean canTravelBetween(int city1, int city2) {
+    private boolean canTravelBetween(int city1, int city2) {
         return distances[city1][city2] != BIG_NUMBER;
     }
 
@@ -189,8 +936,8 @@ public class dynaTSP {
      * @param subset The current subset of cities.
      * @return The calculated potential distance.
      */
-    private static double calculatePotentialDistance(int fromCity, int toCity, int subset) {
-        return table[fromCity][subsetWithoutCity(subset, toCity)] + distances[fromCity][toCity];
+    private double calculatePotentialDistance(int fromCity, int toCity, int subset) {
+        return table.getCost(fromCity, subsetWithoutCity(subset, toCity)) + distances[fromCity][toCity];
     }
 
     /**
@@ -216,10 +963,9 @@ public class dynaTSP {
      * @param previousCity The previous city in the tour.
      * @param potentialDistance The newly calculated distance.
      */
-    private static void updateTableIfNecessary(int city, int subset, int previousCity, double potentialDistance) {
-        if (potentialDistance < table[city][subset]) {
-            table[city][subset] = potentialDistance;
-            backtrack[city][subset] = previousCity;
+    private void updateTableIfNecessary(int city, int subset, int previousCity, double potentialDistance) {
+        if (potentialDistance < table.getCost(city, subset)) {
+            table.update(city, subset, potentialDistance, previousCity);
         }
     }
 
@@ -228,14 +974,85 @@ public class dynaTSP {
  * Constructs the optimal path for the Traveling Salesman Problem.
  * It first identifies the optimal cost by iterating over the last column of the table (i.e., considering all cities).
  * It then backtracks from the optimal cost to construct the actual path.
+ *
+ * @return The optimal tour, or null if there is no tour.
  */
-private static void constructOptimalPath() {
+private TourResult constructOptimalPath() {
+    resetOptimalPath();
+    if (cityCount == 1) {
+        return new TourResult(new int[] {0}, 0);
+    }
     identifyOptimalCost();
     
-    if(optimalCost != BIG_NUMBER) {
-        constructTourFromOptimalCost();
-        System.out.println("Optimal Tour: " + optimalTour);
+    if(optimalCost == BIG_NUMBER) {
+        return null;
     }
+    int[] tour = new int[cityCount];
+    constructTourFromOptimalCost(tour);
+    return new TourResult(tour, optimalCost);
+}
+
+/**
+ * Builds the best tour available from the layers completed so far: the cheapest path through a
+ * subset of the given size, extended by visiting the nearest unvisited city until none are left.
+ * Once every layer is complete this is the optimal tour.
+ *
+ * @param size The size of the subsets in the deepest completed layer.
+ * @return The tour, or null if there is no tour.
+ */
+private TourResult constructAnytimePath(int size) {
+    if (size >= cityCount) {
+        return constructOptimalPath();
+    }
+    int[] tour = new int[cityCount];
+    int visited = 1;
+    int count = 1;
+    if (size >= 2) {
+        double bestCost = BIG_NUMBER;
+        int bestCity = -1;
+        int bestSubset = 0;
+        for (int subset : subsetsOfSize(cityCount, size)) {
+            for (int city = 1; city < cityCount; city++) {
+                if (isCityInSubset(city, subset) && table.getCost(city, subset) < bestCost) {
+                    bestCost = table.getCost(city, subset);
+                    bestCity = city;
+                    bestSubset = subset;
+                }
+            }
+        }
+        if (bestCity != -1) {
+            int city = bestCity;
+            int subset = bestSubset;
+            for (int position = size - 1; position > 0; position--) {
+                tour[position] = city;
+                int previous = table.getPredecessor(city, subset);
+                subset = removeCityFromSubset(subset, city);
+                city = previous;
+            }
+            visited = bestSubset;
+            count = size;
+        }
+    }
+    for (; count < cityCount; count++) {
+        int last = tour[count - 1];
+        int nearest = -1;
+        for (int city = 1; city < cityCount; city++) {
+            if (!isCityInSubset(city, visited) && (nearest == -1 || distances[last][city] < distances[last][nearest])) {
+                nearest = city;
+            }
+        }
+        tour[count] = nearest;
+        visited |= 1 << nearest;
+    }
+    double cost = Geometry.tourLength(distances, tour);
+    return cost < BIG_NUMBER ? new TourResult(tour, cost) : null;
+}
+
+/**
+ * Clears the result of a previous solve so the table can be solved again.
+ */
+private void resetOptimalPath() {
+    optimalCost = BIG_NUMBER;
 }
 
 /**
@@ -243,12 +1060,12 @@ private static void constructOptimalPath() {
  * This is done by checking the last column of the table (representing visiting all cities) and adding the distance 
  * to return to the starting city.
  */
-private static void identifyOptimalCost() {
+private void identifyOptimalCost() {
     int allCitiesSubset = (1 << cityCount) - 1; // Represents a subset where all cities are visited.
 
     for (int i = 1; i < cityCount; i++) {
         if (isFeasibleTourEndingAt(i, allCitiesSubset)) {
-            double tourCostIfEndingAtI = table[i][allCitiesSubset] + distances[i][0];
+            double tourCostIfEndingAtI = table.getCost(i, allCitiesSubset) + distances[i][0];
 
             if (tourCostIfEndingAtI < optimalCost) {
                 optimalCost = tourCostIfEndingAtI;
@@ -265,29 +1082,31 @@ private static void identifyOptimalCost() {
      * @param subset The subset of cities covered.
      * @return true if feasible; false otherwise.
      */
-    private static boolean isFeasibleTourEndingAt(int city, int subset) {
-        return table[city][subset] != BIG_NUMBER;
+    private boolean isFeasibleTourEndingAt(int city, int subset) {
+        return table.getCost(city, subset) != BIG_NUMBER;
     }
 
     /**
      * Constructs the actual tour/path based on the identified optimal cost.
-     * This is achieved by backtracking from the end city and using the 'backtrack' table.
+     * This is achieved by backtracking from the end city using the predecessors stored in the table.
+     *
+     * @param tour Receives the tour, starting at city 0.
      */
-    private static void constructTourFromOptimalCost() {
+    private void constructTourFromOptimalCost(int[] tour) {
         int allCitiesSubset = (1 << cityCount) - 1;
 
-        while(currentStep != -1) {
-            optimalTour.add(cityList.get(currentStep).getIdentifier());
-            int prevCity = backtrack[currentStep][allCitiesSubset];
+        // The starting city begins the tour; the others are filled in walking back from the end city.
+        tour[0] = 0;
+        int position = 1;
+        while(currentStep > 0) {
+            tour[position++] = currentStep;
+            int prevCity = table.getPredecessor(currentStep, allCitiesSubset);
             
             // Removing the current city from the subset.
             allCitiesSubset = removeCityFromSubset(allCitiesSubset, currentStep);
 
             currentStep = prevCity;
         }
-
-        // Adding the starting city to the beginning of the tour.
-        optimalTour.add(0, 0);
     }
 
     /**
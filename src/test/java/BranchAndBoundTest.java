@@ -0,0 +1,80 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class BranchAndBoundTest {
+
+    private static final double TOLERANCE = 1e-6;
+
+    @Test
+    void matchesHeldKarpUpTo14Cities() {
+        for (int n = 4; n <= 14; n++) {
+            for (long seed = 0; seed < 3; seed++) {
+                double[][] distances = distances(TestInstances.random(n, seed));
+                TourResult optimal = TestInstances.heldKarp(distances);
+
+                BranchAndBound solver = new BranchAndBound(distances);
+                TourResult result = solver.solve(2, null);
+                assertFalse(solver.isTimedOut());
+                assertEquals(optimal.getCost(), result.getCost(), TOLERANCE, "n = " + n + ", seed = " + seed);
+                assertTrue(TestInstances.isPermutation(result.getTour(), n));
+                assertEquals(0, result.getTour()[0]);
+                assertEquals(result.getCost(), Geometry.tourLength(distances, result.getTour()), TOLERANCE);
+                assertEquals(result.getCost(), solver.getLowerBound(), TOLERANCE);
+            }
+        }
+    }
+
+    @Test
+    void wholeNumberDistancesMatchHeldKarp() {
+        for (long seed = 0; seed < 3; seed++) {
+            TspInstance random = TestInstances.random(13, seed);
+            TspInstance rounded = new TspInstance("rounded", random.getX(), random.getY(), TspInstance.Metric.EUC_2D);
+            double[][] distances = distances(rounded);
+            assertEquals(TestInstances.heldKarp(distances).getCost(),
+                    new BranchAndBound(distances).solve(1, null).getCost(), TOLERANCE);
+        }
+    }
+
+    @Test
+    void keepsAnOptimalIncumbent() {
+        double[][] distances = distances(TestInstances.random(12, 7));
+        TourResult optimal = TestInstances.heldKarp(distances);
+        TourResult result = new BranchAndBound(distances).solve(1, optimal);
+        assertEquals(optimal.getCost(), result.getCost(), TOLERANCE);
+    }
+
+    @Test
+    void solvesTinyInstances() {
+        for (int n = 1; n <= 3; n++) {
+            double[][] distances = distances(TestInstances.random(n, 1));
+            TourResult result = new BranchAndBound(distances).solve(1, null);
+            assertTrue(TestInstances.isPermutation(result.getTour(), n));
+            assertEquals(Geometry.tourLength(distances, result.getTour()), result.getCost(), TOLERANCE);
+        }
+    }
+
+    @Test
+    void lowerBoundNeverExceedsTheTour() {
+        double[][] distances = distances(TestInstances.random(70, 3));
+        BranchAndBound solver = new BranchAndBound(distances);
+        solver.setTimeLimit(50);
+        TourResult result = solver.solve(2, null);
+        assertTrue(TestInstances.isPermutation(result.getTour(), 70));
+        assertTrue(solver.getLowerBound() <= result.getCost() + TOLERANCE);
+        assertTrue(solver.getLowerBound() > 0);
+    }
+
+    @Test
+    void prunedHeldKarpRejectsTooManyCities() {
+        double[][] distances = distances(TestInstances.random(PrunedHeldKarp.MAX_CITIES + 1, 1));
+        assertThrows(IllegalArgumentException.class, () -> new PrunedHeldKarp(distances));
+    }
+
+    private static double[][] distances(TspInstance instance) {
+        return dynaTSP.calculateDistances(DistanceOracle.create(instance, "dense"));
+    }
+}
@@ -0,0 +1,84 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+class IncrementalTourTest {
+
+    @Test
+    void staysAValidTourThroughRandomUpdates() {
+        checkRandomUpdates(300, 400, 1);
+    }
+
+    @Test
+    void staysAValidTourAcrossTheExactLimit() {
+        // Deleting and inserting around EXACT_LIMIT switches between exact solves and local repair.
+        checkRandomUpdates(IncrementalTour.EXACT_LIMIT + 4, 200, 2);
+    }
+
+    @Test
+    void rejectsToursThatAreNotPermutations() {
+        TspInstance instance = TestInstances.random(5, 1);
+        assertThrows(IllegalArgumentException.class, () -> new IncrementalTour(instance, new int[] {0, 1, 2, 3}));
+        assertThrows(IllegalArgumentException.class, () -> new IncrementalTour(instance, new int[] {0, 1, 2, 3, 3}));
+    }
+
+    /**
+     * Applies random inserts, deletes and moves and checks after each one that the tour visits
+     * every city once, starts at city 0, has the length it reports, and that the cities carry the
+     * coordinates the updates gave them.
+     */
+    private static void checkRandomUpdates(int n, int updates, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        TspInstance instance = TestInstances.random(n, seed);
+        double[] x = instance.getX().clone();
+        double[] y = instance.getY().clone();
+        int[] start = new int[n];
+        for (int i = 0; i < n; i++) {
+            start[i] = i;
+        }
+        IncrementalTour tours = new IncrementalTour(instance, start);
+        int size = n;
+        for (int update = 0; update < updates; update++) {
+            int kind = random.nextInt(3);
+            if (kind == 0 || size <= 4) {
+                double newX = random.nextDouble() * 1000;
+                double newY = random.nextDouble() * 1000;
+                assertEquals(size, tours.insert(newX, newY));
+                x = Arrays.copyOf(x, size + 1);
+                y = Arrays.copyOf(y, size + 1);
+                x[size] = newX;
+                y[size] = newY;
+                size++;
+            } else if (kind == 1) {
+                int city = random.nextInt(size);
+                int last = size - 1;
+                assertEquals(city != last ? last : -1, tours.delete(city));
+                x[city] = x[last];
+                y[city] = y[last];
+                size--;
+                x = Arrays.copyOf(x, size);
+                y = Arrays.copyOf(y, size);
+            } else {
+                int city = random.nextInt(size);
+                x[city] = random.nextDouble() * 1000;
+                y[city] = random.nextDouble() * 1000;
+                tours.move(city, x[city], y[city]);
+            }
+
+            assertEquals(size, tours.size());
+            assertArrayEquals(x, tours.getInstance().getX());
+            assertArrayEquals(y, tours.getInstance().getY());
+            TourResult tour = tours.getTour();
+            assertTrue(TestInstances.isPermutation(tour.getTour(), size), "update " + update);
+            assertEquals(0, tour.getTour()[0]);
+            double length = Geometry.tourLength(x, y, tour.getTour());
+            assertEquals(length, tour.getCost(), 1e-6 * length);
+        }
+    }
+}
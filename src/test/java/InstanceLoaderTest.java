@@ -0,0 +1,97 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class InstanceLoaderTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsPlainFormat() throws IOException {
+        TspInstance instance = TestInstances.random(50, 1);
+        Path file = directory.resolve("cities.txt");
+        StringBuilder text = new StringBuilder("50\n");
+        for (int i = 0; i < 50; i++) {
+            text.append(instance.getX()[i]).append(' ').append(instance.getY()[i]).append('\n');
+        }
+        Files.writeString(file, text);
+
+        TspInstance loaded = InstanceLoader.load(file);
+        assertEquals(TspInstance.Metric.EUCLIDEAN, loaded.getMetric());
+        assertArrayEquals(instance.getX(), loaded.getX());
+        assertArrayEquals(instance.getY(), loaded.getY());
+    }
+
+    @Test
+    void readsTsplibHeaderAndCoordinates() throws IOException {
+        Path file = directory.resolve("tiny.tsp");
+        Files.writeString(file, "NAME : tiny\nTYPE : TSP\nCOMMENT : three cities\nDIMENSION : 3\n"
+                + "EDGE_WEIGHT_TYPE : EUC_2D\nNODE_COORD_SECTION\n1 0 0\n2 3 0\n3 3 4.5\nEOF\n");
+
+        TspInstance loaded = InstanceLoader.load(file);
+        assertEquals("tiny", loaded.getName());
+        assertEquals(TspInstance.Metric.EUC_2D, loaded.getMetric());
+        assertArrayEquals(new double[] {0, 3, 3}, loaded.getX());
+        assertArrayEquals(new double[] {0, 0, 4.5}, loaded.getY());
+        // EUC_2D rounds to the nearest whole number.
+        assertEquals(5.0, loaded.distance(0, 2));
+    }
+
+    @Test
+    void binaryRoundTrip() throws IOException {
+        TspInstance instance = new TspInstance("geo", new double[] {16.47, 40.57, 38.15}, new double[] {96.10, 26.50, 15.35},
+                TspInstance.Metric.GEO);
+        Path file = directory.resolve("geo.tspb");
+        InstanceLoader.writeBinary(instance, file, 0, 0);
+
+        TspInstance loaded = InstanceLoader.load(file);
+        assertEquals("geo", loaded.getName());
+        assertEquals(TspInstance.Metric.GEO, loaded.getMetric());
+        assertArrayEquals(instance.getX(), loaded.getX());
+        assertArrayEquals(instance.getY(), loaded.getY());
+        assertEquals(instance.distance(0, 1), loaded.distance(0, 1));
+    }
+
+    @Test
+    void cacheIsWrittenAndRefreshedWhenTheSourceChanges() throws IOException {
+        Path file = directory.resolve("cities.txt");
+        Files.writeString(file, "3\n0 0\n1 0\n1 1\n");
+        TspInstance first = InstanceLoader.loadCached(file);
+        Path cache = directory.resolve("cities.txt.tspb");
+        assertTrue(Files.exists(cache));
+        assertArrayEquals(first.getX(), InstanceLoader.loadCached(file).getX());
+
+        Files.writeString(file, "3\n0 0\n2 0\n2 2\n");
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 2000));
+        assertArrayEquals(new double[] {0, 2, 2}, InstanceLoader.loadCached(file).getX());
+    }
+
+    @Test
+    void rejectsMalformedFiles() throws IOException {
+        Path negative = directory.resolve("negative.txt");
+        Files.writeString(negative, "-3\n1 2\n");
+        assertThrows(IOException.class, () -> InstanceLoader.load(negative));
+
+        Path missing = directory.resolve("missing.txt");
+        Files.writeString(missing, "4\n0 0\n1 1\n");
+        assertThrows(IOException.class, () -> InstanceLoader.load(missing));
+
+        Path dimension = directory.resolve("dimension.tsp");
+        Files.writeString(dimension, "NAME : x\nDIMENSION : -4\nEDGE_WEIGHT_TYPE : EUC_2D\nNODE_COORD_SECTION\n1 0 0\n");
+        assertThrows(IOException.class, () -> InstanceLoader.load(dimension));
+
+        Path metric = directory.resolve("metric.tsp");
+        Files.writeString(metric, "NAME : x\nDIMENSION : 1\nEDGE_WEIGHT_TYPE : MAN_2D\nNODE_COORD_SECTION\n1 0 0\n");
+        assertThrows(IOException.class, () -> InstanceLoader.load(metric));
+    }
+}
@@ -0,0 +1,77 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+class StateMapTest {
+
+    @Test
+    void keepsTheLowestCost() {
+        StateMap map = new StateMap(4);
+        assertTrue(map.putIfLower(42, 10.0, 3));
+        assertFalse(map.putIfLower(42, 12.0, 5));
+        assertFalse(map.putIfLower(42, 10.0, 5));
+        assertTrue(map.putIfLower(42, 7.5, 6));
+        assertEquals(7.5, map.getCost(42));
+        assertEquals(6, map.getPredecessor(42));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    void reportsMissingKeys() {
+        StateMap map = new StateMap(4);
+        map.putIfLower(1, 1.0, 1);
+        assertTrue(Double.isNaN(map.getCost(2)));
+        assertEquals(-1, map.getPredecessor(2));
+    }
+
+    @Test
+    void matchesHashMapWhileGrowing() {
+        SplittableRandom random = new SplittableRandom(1);
+        StateMap map = new StateMap(16);
+        Map<Long, double[]> expected = new HashMap<>();
+        for (int i = 0; i < 100000; i++) {
+            // Keys shaped like the solver's: a subset above five bits of city.
+            long key = ((long) random.nextInt(1 << 20) << 5) | random.nextInt(1, 31);
+            double cost = random.nextDouble();
+            int predecessor = random.nextInt(31);
+            map.putIfLower(key, cost, predecessor);
+            double[] old = expected.get(key);
+            if (old == null || cost < old[0]) {
+                expected.put(key, new double[] {cost, predecessor});
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<Long, double[]> entry : expected.entrySet()) {
+            assertEquals(entry.getValue()[0], map.getCost(entry.getKey()));
+            assertEquals((int) entry.getValue()[1], map.getPredecessor(entry.getKey()));
+        }
+        int occupied = 0;
+        for (int slot = 0; slot < map.capacity(); slot++) {
+            long key = map.keyAt(slot);
+            if (key != 0) {
+                occupied++;
+                assertEquals(expected.get(key)[0], map.costAt(slot));
+            }
+        }
+        assertEquals(expected.size(), occupied);
+    }
+
+    @Test
+    void clearEmptiesTheMap() {
+        StateMap map = new StateMap(4);
+        for (long key = 1; key <= 100; key++) {
+            map.putIfLower(key, key, 0);
+        }
+        map.clear();
+        assertEquals(0, map.size());
+        assertTrue(Double.isNaN(map.getCost(50)));
+        assertTrue(map.putIfLower(50, 1.0, 2));
+        assertEquals(1.0, map.getCost(50));
+    }
+}
@@ -0,0 +1,59 @@
+import java.util.SplittableRandom;
+
+/**
+ * Instances and checks shared by the tests.
+ */
+final class TestInstances {
+
+    private TestInstances() {
+    }
+
+    /**
+     * Creates cities spread uniformly over a 1000 by 1000 square.
+     *
+     * @param n The number of cities.
+     * @param seed The seed of the coordinates.
+     * @return The instance.
+     */
+    static TspInstance random(int n, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        double[] x = new double[n];
+        double[] y = new double[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = random.nextDouble() * 1000;
+            y[i] = random.nextDouble() * 1000;
+        }
+        return new TspInstance("random-" + n + "-" + seed, x, y, TspInstance.Metric.EUCLIDEAN);
+    }
+
+    /**
+     * Tells whether a tour visits every one of n cities exactly once.
+     *
+     * @param tour The tour.
+     * @param n The number of cities.
+     * @return true if the tour is a permutation of 0 to n-1; false otherwise.
+     */
+    static boolean isPermutation(int[] tour, int n) {
+        if (tour.length != n) {
+            return false;
+        }
+        boolean[] seen = new boolean[n];
+        for (int city : tour) {
+            if (city < 0 || city >= n || seen[city]) {
+                return false;
+            }
+            seen[city] = true;
+        }
+        return true;
+    }
+
+    /**
+     * Solves an instance with the Held-Karp table.
+     *
+     * @param distances The distance between every pair of cities.
+     * @return The optimal tour.
+     */
+    static TourResult heldKarp(double[][] distances) {
+        return new dynaTSP(distances, new CompactTable(distances.length)).solve(1);
+    }
+}
@@ -0,0 +1,77 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the two-level tour against the plain array tour, which reverses the requested path itself.
+ */
+class TourTest {
+
+    @Test
+    void randomReversalsMatchArrayTour() {
+        for (int n : new int[] {5, 17, 100, 1000}) {
+            SplittableRandom random = new SplittableRandom(n);
+            int[] start = shuffled(n, random);
+            ArrayTour expected = new ArrayTour(start);
+            TwoLevelTour actual = new TwoLevelTour(start);
+            for (int step = 0; step < 20 * n; step++) {
+                int from = random.nextInt(n);
+                int to = random.nextInt(n);
+                expected.reverse(from, to);
+                actual.reverse(from, to);
+                if (step % 7 == 0) {
+                    assertSameTour(expected, actual, random);
+                }
+            }
+            assertSameTour(expected, actual, random);
+        }
+    }
+
+    @Test
+    void reversedPathReadsBackwards() {
+        int[] start = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9};
+        for (Tour tour : new Tour[] {new ArrayTour(start), new TwoLevelTour(start)}) {
+            tour.reverse(2, 8);
+            assertArrayEquals(new int[] {0, 1, 8, 7, 6, 5, 4, 3, 2, 9}, tour.toArray());
+            // The path 9, 0, 1 wraps past the end of the order and reads 1, 0, 9 afterwards.
+            tour.reverse(9, 1);
+            assertEquals(1, tour.next(2));
+            assertEquals(0, tour.next(1));
+            assertEquals(9, tour.next(0));
+            assertEquals(8, tour.next(9));
+        }
+    }
+
+    private static void assertSameTour(Tour expected, Tour actual, SplittableRandom random) {
+        int n = expected.size();
+        assertArrayEquals(expected.toArray(), actual.toArray());
+        for (int city = 0; city < n; city++) {
+            assertEquals(expected.next(city), actual.next(city));
+            assertEquals(expected.prev(city), actual.prev(city));
+        }
+        for (int i = 0; i < 50; i++) {
+            int from = random.nextInt(n);
+            int city = random.nextInt(n);
+            int to = random.nextInt(n);
+            assertEquals(expected.between(from, city, to), actual.between(from, city, to),
+                    "between(" + from + ", " + city + ", " + to + ")");
+        }
+    }
+
+    private static int[] shuffled(int n, SplittableRandom random) {
+        int[] tour = new int[n];
+        for (int i = 0; i < n; i++) {
+            tour[i] = i;
+        }
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int temp = tour[i];
+            tour[i] = tour[j];
+            tour[j] = temp;
+        }
+        return tour;
+    }
+}